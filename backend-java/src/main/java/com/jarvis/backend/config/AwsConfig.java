@@ -4,8 +4,10 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
 
 @Configuration
 public class AwsConfig {
@@ -13,6 +15,15 @@ public class AwsConfig {
     @org.springframework.beans.factory.annotation.Value("${aws.region:us-east-1}")
     private String region;
 
+    @org.springframework.beans.factory.annotation.Value("${app.transfer.part-size-mb:8}")
+    private long transferPartSizeMb;
+
+    @org.springframework.beans.factory.annotation.Value("${app.transfer.target-throughput-gbps:10.0}")
+    private double targetThroughputGbps;
+
+    @org.springframework.beans.factory.annotation.Value("${app.transfer.max-concurrency:64}")
+    private int transferMaxConcurrency;
+
     @Bean
     public S3Client s3Client() {
         return S3Client.builder()
@@ -28,4 +39,26 @@ public class AwsConfig {
                 .region(Region.of(region))
                 .build();
     }
+
+    /**
+     * CRT-based client for large transfers: splits single objects into parts
+     * and moves them over parallel connections.
+     */
+    @Bean(destroyMethod = "close")
+    public S3AsyncClient s3AsyncClient() {
+        return S3AsyncClient.crtBuilder()
+                .credentialsProvider(DefaultCredentialsProvider.create())
+                .region(Region.of(region))
+                .minimumPartSizeInBytes(transferPartSizeMb * 1024 * 1024)
+                .targetThroughputInGbps(targetThroughputGbps)
+                .maxConcurrency(transferMaxConcurrency)
+                .build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public S3TransferManager s3TransferManager(S3AsyncClient s3AsyncClient) {
+        return S3TransferManager.builder()
+                .s3Client(s3AsyncClient)
+                .build();
+    }
 }
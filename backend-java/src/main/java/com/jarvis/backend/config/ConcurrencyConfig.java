@@ -0,0 +1,103 @@
+package com.jarvis.backend.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class ConcurrencyConfig {
+
+    @Value("${app.s3.io-threads:32}")
+    private int ioThreads;
+
+    @Value("${app.s3.scan-threads:16}")
+    private int scanThreads;
+
+    @Value("${app.cpu-threads:0}")
+    private int cpuThreads;
+
+    @Value("${app.jobs.threads:4}")
+    private int jobThreads;
+
+    @Value("${app.stream.threads:16}")
+    private int streamThreads;
+
+    @Value("${app.stream.queue:32}")
+    private int streamQueue;
+
+    /**
+     * Bounded pool for fanning out blocking S3 calls (HeadObject, GetObject...)
+     * so a single request can overlap their latency without unbounded threads.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService s3IoExecutor() {
+        return Executors.newFixedThreadPool(ioThreads, namedDaemonThreads("s3-io-"));
+    }
+
+    /**
+     * Runs stale-while-revalidate cache refreshes. Kept apart from the I/O
+     * pool because loaders themselves fan out onto it.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService cacheRefreshExecutor() {
+        return Executors.newFixedThreadPool(4, namedDaemonThreads("cache-refresh-"));
+    }
+
+    /**
+     * Runs bucket scan partitions. Listers block while their consumer catches
+     * up, so they get their own pool rather than tying up I/O threads that
+     * the consumer may itself be waiting on.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService s3ScanExecutor() {
+        return Executors.newFixedThreadPool(scanThreads, namedDaemonThreads("s3-scan-"));
+    }
+
+    /**
+     * CPU-bound work such as archive compression, sized to the cores
+     * (app.cpu-threads overrides) so it never queues behind blocking I/O.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService cpuExecutor() {
+        int threads = cpuThreads > 0 ? cpuThreads : Runtime.getRuntime().availableProcessors();
+        return Executors.newFixedThreadPool(threads, namedDaemonThreads("cpu-"));
+    }
+
+    /**
+     * Runs long response streams (folder downloads, raw uploads) off the
+     * Tomcat request threads. Bounded in both threads and queue: once both
+     * are full, new streams are rejected with 503 instead of piling up.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService streamingExecutor() {
+        return new ThreadPoolExecutor(streamThreads, streamThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(streamQueue), namedDaemonThreads("stream-"));
+    }
+
+    /**
+     * Runs background jobs (bulk deletes, trash and restore, archive builds).
+     * Each job already fans out onto the I/O and CPU pools, so a few threads
+     * keep both busy; further jobs wait in the JobService queue.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService jobExecutor() {
+        return Executors.newFixedThreadPool(jobThreads, namedDaemonThreads("job-"));
+    }
+
+    static ThreadFactory namedDaemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
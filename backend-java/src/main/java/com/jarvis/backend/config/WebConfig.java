@@ -1,12 +1,28 @@
 package com.jarvis.backend.config;
 
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
+    private final ExecutorService streamingExecutor;
+
+    @Value("${app.stream.timeout-minutes:360}")
+    private long streamTimeoutMinutes;
+
+    public WebConfig(@Qualifier("streamingExecutor") ExecutorService streamingExecutor) {
+        this.streamingExecutor = streamingExecutor;
+    }
+
     @Override
     public void addCorsMappings(CorsRegistry registry) {
         registry.addMapping("/**")
@@ -14,4 +30,15 @@ public class WebConfig implements WebMvcConfigurer {
                 .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
                 .allowedHeaders("*");
     }
+
+    /**
+     * StreamingResponseBody and Callable handlers run here rather than on
+     * Spring's default unbounded SimpleAsyncTaskExecutor. The timeout is long
+     * because a folder download legitimately streams for hours.
+     */
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(new TaskExecutorAdapter(streamingExecutor));
+        configurer.setDefaultTimeout(TimeUnit.MINUTES.toMillis(streamTimeoutMinutes));
+    }
 }
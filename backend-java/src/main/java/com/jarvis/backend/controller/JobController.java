@@ -0,0 +1,56 @@
+package com.jarvis.backend.controller;
+
+import com.jarvis.backend.dto.ApiResponse;
+import com.jarvis.backend.dto.JobStatus;
+import com.jarvis.backend.service.ArchiveJobService;
+import com.jarvis.backend.service.JobService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Progress and cancellation of background jobs started with async=true (or
+ * as archive jobs).
+ */
+@RestController
+@RequestMapping("/api/jobs")
+@RequiredArgsConstructor
+public class JobController {
+
+    private final JobService jobService;
+    private final ArchiveJobService archiveJobService;
+
+    @GetMapping
+    public ResponseEntity<ApiResponse<List<JobStatus>>> listJobs() {
+        List<JobStatus> jobs = jobService.list().stream().map(this::decorate).collect(Collectors.toList());
+        return ResponseEntity.ok(ApiResponse.<List<JobStatus>>builder().success(true).data(jobs).build());
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<ApiResponse<JobStatus>> getJob(@PathVariable("id") String id) {
+        JobStatus status = jobService.get(id);
+        if (status == null)
+            return notFound();
+        return ResponseEntity.ok(ApiResponse.<JobStatus>builder().success(true).data(decorate(status)).build());
+    }
+
+    @PostMapping("/{id}/cancel")
+    public ResponseEntity<ApiResponse<JobStatus>> cancelJob(@PathVariable("id") String id) {
+        JobStatus status = jobService.cancel(id);
+        if (status == null)
+            return notFound();
+        return ResponseEntity.ok(ApiResponse.<JobStatus>builder().success(true).data(status).build());
+    }
+
+    private JobStatus decorate(JobStatus status) {
+        return ArchiveJobService.JOB_TYPE.equals(status.getType()) ? archiveJobService.withDownloadUrl(status) : status;
+    }
+
+    private static ResponseEntity<ApiResponse<JobStatus>> notFound() {
+        return ResponseEntity.status(404)
+                .body(ApiResponse.<JobStatus>builder().success(false).message("Job not found").build());
+    }
+}
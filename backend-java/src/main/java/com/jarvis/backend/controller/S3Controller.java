@@ -1,18 +1,27 @@
 package com.jarvis.backend.controller;
 
 import com.jarvis.backend.dto.*;
+import com.jarvis.backend.service.ArchiveFormat;
+import com.jarvis.backend.service.ArchiveJobService;
+import com.jarvis.backend.service.JobService;
 import com.jarvis.backend.service.S3Service;
+import com.jarvis.backend.service.SharingIndex;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import jakarta.servlet.http.HttpServletRequest;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
 
 import jakarta.servlet.http.HttpServletResponse;
@@ -24,6 +33,10 @@ import jakarta.servlet.http.HttpServletResponse;
 public class S3Controller {
 
     private final S3Service s3Service;
+    private final ArchiveJobService archiveJobService;
+    private final JobService jobService;
+
+    private static final int MAX_ARCHIVE_KEYS = 10000;
 
     @PostMapping("/direct-upload")
     public ResponseEntity<ApiResponse<UploadResponse>> directUpload(
@@ -41,16 +54,112 @@ public class S3Controller {
 
         String key = (prefix != null && !prefix.isEmpty()) ? prefix + originalName : originalName;
 
-        UploadResponse result = s3Service.uploadFile(key, file.getContentType(), file.getBytes());
+        // Multipart parts are spooled to disk by the container; stream from there
+        UploadResponse result;
+        try (InputStream in = file.getInputStream()) {
+            result = s3Service.uploadFile(key, file.getContentType(), in, file.getSize());
+        }
         return ResponseEntity.ok(ApiResponse.<UploadResponse>builder().success(true).data(result).build());
     }
 
+    /**
+     * Raw-body upload: the request body is the file itself and is streamed
+     * from the servlet input stream straight to S3, with no multipart
+     * parsing or temporary file. The body is read on the streaming executor;
+     * a slow uploader would otherwise hold a request thread for the whole
+     * transfer.
+     */
+    @PutMapping("/direct-upload")
+    public Callable<ResponseEntity<ApiResponse<UploadResponse>>> streamUpload(
+            @RequestParam("fileName") String fileName,
+            @RequestParam(value = "prefix", required = false) String prefix,
+            HttpServletRequest request) {
+
+        String key = (prefix != null && !prefix.isEmpty()) ? prefix + fileName : fileName;
+
+        return () -> {
+            UploadResponse result;
+            try (InputStream in = request.getInputStream()) {
+                result = s3Service.uploadFile(key, request.getContentType(), in, request.getContentLengthLong());
+            }
+            return ResponseEntity.ok(ApiResponse.<UploadResponse>builder().success(true).data(result).build());
+        };
+    }
+
     @PostMapping("/upload-url")
     public ResponseEntity<ApiResponse<PresignedUrlResponse>> getUploadUrl(@RequestBody PresignedUrlRequest request) {
         PresignedUrlResponse res = s3Service.generatePresignedUrl(request.getFileName(), request.getContentType());
         return ResponseEntity.ok(ApiResponse.<PresignedUrlResponse>builder().success(true).data(res).build());
     }
 
+    @PostMapping("/upload-urls")
+    public ResponseEntity<ApiResponse<BatchUploadUrlResponse>> getUploadUrls(
+            @RequestBody BatchUploadUrlRequest request) {
+        BatchUploadUrlResponse res;
+        try {
+            res = s3Service.generatePresignedUrls(request.getPrefix(), request.getFiles());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.<BatchUploadUrlResponse>builder().success(false).message(e.getMessage()).build());
+        }
+        return ResponseEntity.ok(ApiResponse.<BatchUploadUrlResponse>builder().success(true).data(res).build());
+    }
+
+    /**
+     * Called by the browser once its presigned PUTs have finished, so the
+     * uploads show up in listings straight away.
+     */
+    @PostMapping("/upload-complete")
+    public ResponseEntity<ApiResponse<Object>> confirmUploads(@RequestBody List<String> keys) {
+        int recorded;
+        try {
+            recorded = s3Service.confirmUploads(keys);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.builder().success(false).message(e.getMessage()).build());
+        }
+        return ResponseEntity.ok(ApiResponse.builder().success(true)
+                .data(java.util.Map.of("recorded", recorded)).build());
+    }
+
+    // --- Presigned multipart upload: initiate, sign parts, list (resume), complete/abort ---
+    @PostMapping("/multipart-upload")
+    public ResponseEntity<ApiResponse<MultipartUploadResponse>> initiateMultipartUpload(
+            @RequestBody MultipartUploadRequest request) {
+        MultipartUploadResponse res = s3Service.initiateMultipartUpload(request.getFileName(),
+                request.getContentType());
+        return ResponseEntity.ok(ApiResponse.<MultipartUploadResponse>builder().success(true).data(res).build());
+    }
+
+    @PostMapping("/multipart-upload/part-urls")
+    public ResponseEntity<ApiResponse<MultipartUploadResponse>> getPartUploadUrls(
+            @RequestBody MultipartUploadRequest request) {
+        MultipartUploadResponse res = s3Service.presignUploadParts(request.getKey(), request.getUploadId(),
+                request.getPartNumbers());
+        return ResponseEntity.ok(ApiResponse.<MultipartUploadResponse>builder().success(true).data(res).build());
+    }
+
+    @GetMapping("/multipart-upload/parts")
+    public ResponseEntity<ApiResponse<MultipartUploadResponse>> listUploadedParts(
+            @RequestParam("key") String key,
+            @RequestParam("uploadId") String uploadId) {
+        MultipartUploadResponse res = s3Service.listUploadedParts(key, uploadId);
+        return ResponseEntity.ok(ApiResponse.<MultipartUploadResponse>builder().success(true).data(res).build());
+    }
+
+    @PostMapping("/multipart-upload/complete")
+    public ResponseEntity<ApiResponse<UploadResponse>> completeMultipartUpload(
+            @RequestBody MultipartUploadRequest request) {
+        UploadResponse res = s3Service.completeMultipartUpload(request.getKey(), request.getUploadId(),
+                request.getParts());
+        return ResponseEntity.ok(ApiResponse.<UploadResponse>builder().success(true).data(res).build());
+    }
+
+    @PostMapping("/multipart-upload/abort")
+    public ResponseEntity<ApiResponse<Object>> abortMultipartUpload(@RequestBody MultipartUploadRequest request) {
+        s3Service.abortMultipartUpload(request.getKey(), request.getUploadId());
+        return ResponseEntity.ok(ApiResponse.builder().success(true).message("Upload aborted").build());
+    }
+
     @GetMapping("/file-url/{*key}")
     public ResponseEntity<ApiResponse<Object>> getFileUrl(
             @PathVariable(value = "key", required = false) String key,
@@ -70,34 +179,16 @@ public class S3Controller {
                         .body(ApiResponse.builder().success(false).message("Key is required").build());
             }
 
-            // Simple Permission Check
-            SharingSettings sharing = s3Service.getFileSharing(finalKey);
-            boolean hasAccess = false;
-
-            if ("public".equals(sharing.getGeneralAccess())) {
-                hasAccess = true;
-            } else if (userEmail != null) {
-                // Check if user is in shared list or is owner (mocking owner for now)
-                if ("owner@example.com".equals(userEmail)) {
-                    hasAccess = true;
-                } else {
-                    hasAccess = sharing.getSharedWith().stream()
-                            .anyMatch(u -> u.getEmail().equalsIgnoreCase(userEmail));
-                }
-            } else {
-                // If no email, only allow if we are generating a public URL for the first time
-                // by owner
-                // In this demo, we'll allow the owner to generate it without header for
-                // simplicity in UI,
-                // but real apps would enforce auth here.
-                hasAccess = true;
-            }
-
-            if (!hasAccess) {
+            if (!hasAccess(s3Service.getSharingIndex(), finalKey, userEmail)) {
                 return ResponseEntity.status(403)
                         .body(ApiResponse.builder().success(false).message("Access Denied").build());
             }
 
+            if (s3Service.isTrashed(finalKey)) {
+                return ResponseEntity.status(404)
+                        .body(ApiResponse.builder().success(false).message("File not found").build());
+            }
+
             String url = s3Service.getFileUrl(finalKey, isPublic, download);
             return ResponseEntity.ok(ApiResponse.builder().success(true).data(java.util.Map.of("url", url)).build());
         } catch (Exception e) {
@@ -106,90 +197,143 @@ public class S3Controller {
         }
     }
 
+    /**
+     * Batch form of /file-url: signs URLs for a whole page of keys in one
+     * call. Keys the caller may not access, or that are in the trash, are left
+     * out of the result.
+     */
+    @PostMapping("/file-urls")
+    public ResponseEntity<ApiResponse<Object>> getFileUrls(
+            @RequestBody FileUrlsRequest request,
+            @RequestHeader(value = "X-User-Email", required = false) String userEmail) {
+
+        List<String> keys = request.getKeys() != null ? request.getKeys() : List.of();
+        SharingIndex sharing = s3Service.getSharingIndex();
+        List<String> allowed = keys.stream()
+                .filter(key -> key != null && !key.isEmpty() && hasAccess(sharing, key, userEmail))
+                .filter(key -> !s3Service.isTrashed(key))
+                .collect(Collectors.toList());
+
+        java.util.Map<String, String> urls = s3Service.getFileUrls(allowed, request.isPublic(), request.isDownload());
+        return ResponseEntity.ok(ApiResponse.builder().success(true).data(java.util.Map.of("urls", urls)).build());
+    }
+
+    /**
+     * Some objects of a bulk operation failed; the rest went through, so the
+     * result (with the per-key reasons) goes back alongside the error.
+     */
+    private ResponseEntity<ApiResponse<Object>> partialFailure(String operation, BulkOperationResult result) {
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(ApiResponse.builder()
+                .success(false)
+                .error("Failed to " + operation + " " + result.getFailed() + " of "
+                        + (result.getSucceeded() + result.getFailed()) + " objects")
+                .data(result)
+                .build());
+    }
+
+    /**
+     * The job an async=true request started; the client polls /api/jobs/{id}.
+     */
+    private ResponseEntity<ApiResponse<Object>> accepted(JobStatus job) {
+        return ResponseEntity.accepted().body(ApiResponse.builder().success(true).data(job).build());
+    }
+
+    // Simple Permission Check
+    private boolean hasAccess(SharingIndex sharing, String key, String userEmail) {
+        if (sharing.isPublic(key)) {
+            return true;
+        } else if (userEmail != null) {
+            // Check if user is in shared list or is owner (mocking owner for now)
+            if ("owner@example.com".equals(userEmail)) {
+                return true;
+            }
+            return sharing.isSharedWith(key, userEmail);
+        }
+        // If no email, only allow if we are generating a public URL for the first time
+        // by owner
+        // In this demo, we'll allow the owner to generate it without header for
+        // simplicity in UI,
+        // but real apps would enforce auth here.
+        return true;
+    }
+
     @GetMapping("/list")
     public ResponseEntity<ApiResponse<Object>> listFiles(
             @RequestParam(value = "prefix", defaultValue = "") String prefix,
             @RequestParam(value = "limit", required = false) Integer limit,
             @RequestParam(value = "continuationToken", required = false) String continuationToken,
             @RequestParam(value = "recursive", defaultValue = "false") boolean recursive,
-            @RequestParam(value = "viewType", required = false) String viewType) {
+            @RequestParam(value = "viewType", required = false) String viewType,
+            @RequestParam(value = "withUrls", defaultValue = "false") boolean withUrls,
+            @RequestHeader(value = "X-User-Email", required = false) String userEmail) {
 
         int finalLimit = (limit != null) ? limit : 100;
+        FileListResponse res;
 
         if ("recent".equals(viewType)) {
             List<FileItem> recentItems = s3Service.getRecentActivity(limit != null ? limit : 20);
-            FileListResponse res = FileListResponse.builder()
+            res = FileListResponse.builder()
                     .items(recentItems)
                     .nextContinuationToken(null)
                     .isTruncated(false)
                     .build();
-            return ResponseEntity.ok(ApiResponse.builder().success(true).data(res).build());
-        }
-
-        if ("starred".equals(viewType)) {
-            List<String> starredKeys = s3Service.getStarredKeys();
-            // Fetch ALL (recursive) to filter in memory - replicating Node approach
-            FileListResponse allRes = s3Service.listFiles("", 10000, null, true);
-
-            List<FileItem> filtered = allRes.getItems().stream()
-                    .filter(item -> starredKeys.contains(item.getKey()))
-                    .collect(Collectors.toList());
-
-            FileListResponse res = FileListResponse.builder()
-                    .items(filtered)
+        } else if ("starred".equals(viewType)) {
+            res = FileListResponse.builder()
+                    .items(s3Service.getStarredItems())
                     .nextContinuationToken(null) // No pagination for starred
                     .isTruncated(false)
                     .build();
-            return ResponseEntity.ok(ApiResponse.builder().success(true).data(res).build());
-        }
-
-        if ("shared".equals(viewType)) {
-            // Get all sharing data
-            Map<String, SharingSettings> sharingData = s3Service.getSharingData();
-            // Get all files
-            FileListResponse allRes = s3Service.listFiles("", 10000, null, true);
-
-            // Filter files that have sharing settings (either public or shared with
-            // someone)
-            List<FileItem> filtered = allRes.getItems().stream()
-                    .filter(item -> {
-                        SharingSettings settings = sharingData.get(item.getKey());
-                        if (settings == null)
-                            return false;
-                        boolean isPublic = "public".equals(settings.getGeneralAccess());
-                        boolean isSharedWithOthers = settings.getSharedWith() != null
-                                && !settings.getSharedWith().isEmpty();
-                        return isPublic || isSharedWithOthers;
-                    })
-                    .collect(Collectors.toList());
-
-            FileListResponse res = FileListResponse.builder()
-                    .items(filtered)
+        } else if ("shared".equals(viewType)) {
+            res = FileListResponse.builder()
+                    .items(s3Service.getSharedItems())
                     .nextContinuationToken(null)
                     .isTruncated(false)
                     .build();
-            return ResponseEntity.ok(ApiResponse.builder().success(true).data(res).build());
+        } else if ("sharedWithMe".equals(viewType)) {
+            List<FileItem> items = userEmail != null ? s3Service.getSharedWithMe(userEmail) : List.of();
+            res = FileListResponse.builder()
+                    .items(items)
+                    .nextContinuationToken(null)
+                    .isTruncated(false)
+                    .build();
+        } else {
+            // Standard list
+            res = s3Service.listFiles(prefix, finalLimit, continuationToken, recursive);
         }
 
-        // Standard list
-        FileListResponse res = s3Service.listFiles(prefix, finalLimit, continuationToken, recursive);
+        // Sign every file's URL here rather than one /file-url call per item
+        if (withUrls)
+            res = s3Service.withFileUrls(res);
         return ResponseEntity.ok(ApiResponse.builder().success(true).data(res).build());
     }
 
     @DeleteMapping("/files/**")
-    public ResponseEntity<ApiResponse<String>> deleteFile(HttpServletRequest request) {
+    public ResponseEntity<ApiResponse<Object>> deleteFile(HttpServletRequest request,
+            @RequestParam(value = "async", defaultValue = "false") boolean async) {
         String path = (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
         String key = path.substring("/api/s3/files/".length());
+        if (async)
+            return accepted(jobService.submit("DELETE", key, ctx -> s3Service.bulkDelete(List.of(key), ctx)));
 
-        s3Service.deleteFile(key);
+        BulkOperationResult result = s3Service.deleteFile(key);
+        if (result.getFailed() > 0)
+            return partialFailure("delete", result);
         return ResponseEntity
-                .ok(ApiResponse.<String>builder().success(true).message("File deleted successfully").build());
+                .ok(ApiResponse.builder().success(true).message("File deleted successfully").data(result).build());
     }
 
     @PostMapping("/bulk-delete")
-    public ResponseEntity<ApiResponse<Object>> bulkDelete(@RequestBody List<String> keys) {
-        s3Service.bulkDelete(keys);
-        return ResponseEntity.ok(ApiResponse.builder().success(true).message("Items deleted successfully").build());
+    public ResponseEntity<ApiResponse<Object>> bulkDelete(@RequestBody List<String> keys,
+            @RequestParam(value = "async", defaultValue = "false") boolean async) {
+        if (async) {
+            String target = keys.size() == 1 ? keys.get(0) : keys.size() + " items";
+            return accepted(jobService.submit("DELETE", target, ctx -> s3Service.bulkDelete(keys, ctx)));
+        }
+        BulkOperationResult result = s3Service.bulkDelete(keys);
+        if (result.getFailed() > 0)
+            return partialFailure("delete", result);
+        return ResponseEntity.ok(ApiResponse.builder().success(true).message("Items deleted successfully")
+                .data(result).build());
     }
 
     @PostMapping("/create-folder")
@@ -206,16 +350,49 @@ public class S3Controller {
     }
 
     @PostMapping("/move-to-trash")
-    public ResponseEntity<ApiResponse<Object>> moveToTrash(@RequestBody KeyRequest request) {
-        s3Service.moveToTrash(request.getKey());
+    public ResponseEntity<ApiResponse<Object>> moveToTrash(@RequestBody KeyRequest request,
+            @RequestParam(value = "async", defaultValue = "false") boolean async) {
+        if (async)
+            return accepted(jobService.submit("TRASH", request.getKey(),
+                    ctx -> s3Service.moveToTrash(request.getKey(), ctx)));
+        BulkOperationResult result = s3Service.moveToTrash(request.getKey());
+        if (result.getFailed() > 0)
+            return partialFailure("move to trash", result);
         // Node: result = { success:true, trashKey }
         return ResponseEntity.ok(ApiResponse.builder().success(true)
                 .data(java.util.Map.of("success", true, "trashKey", "trash/" + request.getKey())).build());
     }
 
+    /**
+     * Moves or renames a file or folder. Stars, sharing and short links
+     * follow the moved keys.
+     */
+    @PostMapping("/move")
+    public ResponseEntity<ApiResponse<Object>> move(@RequestBody MoveRequest request,
+            @RequestParam(value = "async", defaultValue = "false") boolean async) {
+        if (async)
+            return accepted(jobService.submit("MOVE", request.getSource(),
+                    ctx -> s3Service.move(request.getSource(), request.getDestination(), ctx)));
+        BulkOperationResult result;
+        try {
+            result = s3Service.move(request.getSource(), request.getDestination());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.builder().success(false).message(e.getMessage()).build());
+        }
+        if (result.getFailed() > 0)
+            return partialFailure("move", result);
+        return ResponseEntity.ok(ApiResponse.builder().success(true).message("Moved successfully").data(result).build());
+    }
+
     @PostMapping("/restore")
-    public ResponseEntity<ApiResponse<Object>> restore(@RequestBody KeyRequest request) {
-        s3Service.restoreFile(request.getKey());
+    public ResponseEntity<ApiResponse<Object>> restore(@RequestBody KeyRequest request,
+            @RequestParam(value = "async", defaultValue = "false") boolean async) {
+        if (async)
+            return accepted(jobService.submit("RESTORE", request.getKey(),
+                    ctx -> s3Service.restoreFile(request.getKey(), ctx)));
+        BulkOperationResult result = s3Service.restoreFile(request.getKey());
+        if (result.getFailed() > 0)
+            return partialFailure("restore", result);
         // result = { success:true, originalKey: ... }
         String originalKey = request.getKey().substring("trash/".length());
         return ResponseEntity.ok(ApiResponse.builder().success(true)
@@ -289,6 +466,12 @@ public class S3Controller {
         // access token.
         // This mirrors the behavior where the link itself is the secret.
 
+        // The link itself is kept, so restoring the file brings it back
+        if (s3Service.isTrashed(link.getKey())) {
+            return ResponseEntity.status(404)
+                    .body(ApiResponse.builder().success(false).message("File not found").build());
+        }
+
         String url = s3Service.getFileUrl(link.getKey(), true, false);
         return ResponseEntity.ok(ApiResponse.builder().success(true).data(java.util.Map.of("url", url)).build());
     }
@@ -299,29 +482,135 @@ public class S3Controller {
                 .success(true).data(s3Service.getStorageUsage()).build());
     }
 
+    // --- Pre-built archives: start a job, poll it, download from the returned URL ---
+    @PostMapping("/archive-jobs")
+    public ResponseEntity<ApiResponse<JobStatus>> startArchiveJob(@RequestBody ArchiveJobRequest request) {
+        ArchiveFormat format;
+        try {
+            format = ArchiveFormat.fromParam(request.getFormat());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(ApiResponse.<JobStatus>builder().success(false).message(e.getMessage()).build());
+        }
+        JobStatus status = archiveJobService.start(request.getPrefix(), format);
+        return ResponseEntity.accepted().body(ApiResponse.<JobStatus>builder().success(true).data(status).build());
+    }
+
+    @GetMapping("/archive-jobs/{id}")
+    public ResponseEntity<ApiResponse<JobStatus>> getArchiveJob(@PathVariable("id") String id) {
+        JobStatus status = archiveJobService.getStatus(id);
+        if (status == null) {
+            return ResponseEntity.status(404)
+                    .body(ApiResponse.<JobStatus>builder().success(false).message("Archive job not found").build());
+        }
+        return ResponseEntity.ok(ApiResponse.<JobStatus>builder().success(true).data(status).build());
+    }
+
+    /**
+     * Streams the archive from the streaming executor, so a slow client holds
+     * one of its threads instead of a Tomcat request thread. Writes block
+     * while the client catches up, which in turn stalls the prefetch window;
+     * a disconnect fails the next write and cancels outstanding S3 reads.
+     */
     @GetMapping("/download-folder/{*key}")
-    public void downloadFolder(@PathVariable("key") String key, HttpServletResponse response) throws IOException {
+    public ResponseEntity<?> downloadFolder(@PathVariable("key") String key,
+            @RequestParam(value = "format", required = false) String format,
+            @RequestParam(value = "async", defaultValue = "false") boolean async,
+            HttpServletResponse response) {
         String finalKey = key;
         if (finalKey != null && finalKey.startsWith("/")) {
             finalKey = finalKey.substring(1);
         }
 
+        ArchiveFormat archiveFormat;
+        try {
+            archiveFormat = ArchiveFormat.fromParam(format);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (async) {
+            // Build it into the bucket instead, as an archive job
+            return accepted(archiveJobService.start(finalKey, archiveFormat));
+        }
+
         String folderName = "download";
         if (finalKey != null && !finalKey.isEmpty()) {
             String[] parts = finalKey.split("/");
             folderName = parts[parts.length - 1];
         }
 
-        response.setContentType("application/zip");
-        response.setHeader("Content-Disposition", "attachment; filename=\"" + folderName + ".zip\"");
+        String prefix = finalKey;
+        StreamingResponseBody body = out -> {
+            try {
+                s3Service.downloadFolder(prefix, archiveFormat, out);
+            } catch (Exception e) {
+                log.error("Error downloading folder {}", prefix, e);
+                if (!response.isCommitted()) {
+                    throw e;
+                }
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(archiveFormat.contentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"" + folderName + "." + archiveFormat.extension() + "\"")
+                .body(body);
+    }
 
+    /**
+     * Streams several files and folders as a single archive, so a multi-item
+     * selection is one request instead of one per file.
+     */
+    @PostMapping(value = "/download-archive", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> downloadArchive(@RequestBody ArchiveRequest request,
+            HttpServletResponse response) {
+        return archiveResponse(request.getKeys(), request.getFormat(), request.getName(), response);
+    }
+
+    /**
+     * Form-post variant of download-archive, so the browser can submit a
+     * plain form and save the stream itself instead of buffering it.
+     */
+    @PostMapping(value = "/download-archive", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+    public ResponseEntity<StreamingResponseBody> downloadArchiveForm(
+            @RequestParam(value = "keys", required = false) List<String> keys,
+            @RequestParam(value = "format", required = false) String format,
+            @RequestParam(value = "name", required = false) String name,
+            HttpServletResponse response) {
+        return archiveResponse(keys, format, name, response);
+    }
+
+    private ResponseEntity<StreamingResponseBody> archiveResponse(List<String> keys, String format, String name,
+            HttpServletResponse response) {
+        if (keys == null || keys.isEmpty() || keys.size() > MAX_ARCHIVE_KEYS) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        ArchiveFormat archiveFormat;
         try {
-            s3Service.downloadFolder(finalKey, response.getOutputStream());
-        } catch (Exception e) {
-            log.error("Error downloading folder", e);
-            if (!response.isCommitted()) {
-                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            }
+            archiveFormat = ArchiveFormat.fromParam(format);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         }
+
+        String fileName = name != null && !name.isBlank()
+                ? name.replaceAll("[\\\\/\"\\r\\n]", "_")
+                : "download";
+
+        StreamingResponseBody body = out -> {
+            try {
+                s3Service.downloadSelection(keys, archiveFormat, out);
+            } catch (Exception e) {
+                log.error("Error downloading archive of {} keys", keys.size(), e);
+                if (!response.isCommitted()) {
+                    throw e;
+                }
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(archiveFormat.contentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"" + fileName + "." + archiveFormat.extension() + "\"")
+                .body(body);
     }
 }
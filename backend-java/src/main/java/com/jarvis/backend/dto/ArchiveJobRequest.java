@@ -0,0 +1,9 @@
+package com.jarvis.backend.dto;
+
+import lombok.Data;
+
+@Data
+public class ArchiveJobRequest {
+    private String prefix;
+    private String format; // zip (default), tar or tar.zst
+}
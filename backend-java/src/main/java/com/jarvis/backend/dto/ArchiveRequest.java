@@ -0,0 +1,12 @@
+package com.jarvis.backend.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class ArchiveRequest {
+    private List<String> keys;
+    private String format;
+    private String name;
+}
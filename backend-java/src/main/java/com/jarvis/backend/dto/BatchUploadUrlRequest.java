@@ -0,0 +1,22 @@
+package com.jarvis.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+public class BatchUploadUrlRequest {
+    private String prefix; // destination folder, may be empty
+    private List<FileEntry> files;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class FileEntry {
+        private String relativePath; // e.g. "photos/2024/a.jpg"
+        private String contentType;
+        private Long size;
+    }
+}
@@ -0,0 +1,13 @@
+package com.jarvis.backend.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class BatchUploadUrlResponse {
+    private List<PresignedUrlResponse> urls; // same order as the request
+    private List<String> folders; // folder markers created
+}
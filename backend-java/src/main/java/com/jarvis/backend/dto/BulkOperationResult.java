@@ -0,0 +1,19 @@
+package com.jarvis.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkOperationResult {
+    private long succeeded;
+    private long failed;
+    private long bytes;
+    private Map<String, String> failures; // key -> reason, capped; see failed for the total
+}
@@ -0,0 +1,14 @@
+package com.jarvis.backend.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class FileUrlsRequest {
+    private List<String> keys;
+    @JsonProperty("isPublic")
+    private boolean isPublic;
+    private boolean download;
+}
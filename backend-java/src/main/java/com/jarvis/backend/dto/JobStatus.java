@@ -0,0 +1,27 @@
+package com.jarvis.backend.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class JobStatus {
+    private String id;
+    private String type; // DELETE, TRASH, RESTORE, MOVE, ARCHIVE
+    private String target; // key, prefix or selection the job works on
+    private String state; // QUEUED, RUNNING, DONE, FAILED, CANCELLED
+    private long totalObjects; // 0 until known
+    private long processedObjects;
+    private long totalBytes;
+    private long processedBytes;
+    private String error;
+    private Object result; // type-specific, e.g. a BulkOperationResult
+    private String createdAt;
+    private String finishedAt;
+}
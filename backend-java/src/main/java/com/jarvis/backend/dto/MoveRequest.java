@@ -0,0 +1,9 @@
+package com.jarvis.backend.dto;
+
+import lombok.Data;
+
+@Data
+public class MoveRequest {
+    private String source; // file key, or folder key ending in "/"
+    private String destination; // the new key
+}
@@ -0,0 +1,15 @@
+package com.jarvis.backend.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class MultipartUploadRequest {
+    private String fileName; // initiate only
+    private String contentType; // initiate only
+    private String key;
+    private String uploadId;
+    private List<Integer> partNumbers; // part URLs to presign
+    private List<MultipartUploadResponse.Part> parts; // complete: uploaded parts and their ETags
+}
@@ -0,0 +1,27 @@
+package com.jarvis.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+public class MultipartUploadResponse {
+    private String key;
+    private String uploadId;
+    private List<Part> parts;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Part {
+        private Integer partNumber;
+        private String etag;
+        private Long size;
+        private String url; // presigned PUT for this part
+    }
+}
@@ -0,0 +1,15 @@
+package com.jarvis.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class Tombstone {
+    private String trashedAt;
+    private boolean reopened; // something was written under the trashed folder afterwards
+}
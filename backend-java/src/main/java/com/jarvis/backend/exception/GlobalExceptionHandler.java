@@ -1,6 +1,8 @@
 package com.jarvis.backend.exception;
 
 import com.jarvis.backend.dto.ApiResponse;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -10,6 +12,18 @@ import org.springframework.web.context.request.WebRequest;
 @RestControllerAdvice
 public class GlobalExceptionHandler {
 
+    // Streaming executor is saturated (see ConcurrencyConfig#streamingExecutor)
+    @ExceptionHandler(TaskRejectedException.class)
+    public ResponseEntity<ApiResponse<Void>> handleRejected(TaskRejectedException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "30")
+                .body(ApiResponse.<Void>builder()
+                        .success(false)
+                        .message("Server busy, try again shortly")
+                        .error(ex.getMessage())
+                        .build());
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ApiResponse<Void>> handleAllExceptions(Exception ex, WebRequest request) {
         String message = "Internal Server Error";
@@ -25,6 +39,8 @@ public class GlobalExceptionHandler {
             message = "Failed to create folder";
         else if (request.getDescription(false).contains("/move-to-trash"))
             message = "Failed to move to trash";
+        else if (request.getDescription(false).contains("/move"))
+            message = "Failed to move";
         else if (request.getDescription(false).contains("/restore"))
             message = "Failed to restore file";
         else if (request.getDescription(false).contains("/dashboard"))
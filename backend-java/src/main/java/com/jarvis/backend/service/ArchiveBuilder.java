@@ -0,0 +1,215 @@
+package com.jarvis.backend.service;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+/**
+ * Writes objects from the bucket as a ZIP, tar or tar.zst archive. Objects
+ * are prefetched concurrently ahead of the entry being written, so the
+ * stream is limited by its consumer rather than by per-object S3 latency.
+ * Logically trashed objects are left out, as they are from listings. The
+ * output stream is flushed but never closed.
+ */
+@Component
+@Slf4j
+public class ArchiveBuilder {
+
+    private final S3Client s3Client;
+    private final ObjectPrefetcher prefetcher;
+    private final BucketScanner bucketScanner;
+    private final TombstoneStore tombstones;
+    private final ExecutorService ioExecutor;
+
+    @Value("${aws.s3.bucket-name}")
+    private String bucketName;
+
+    @Value("${app.zip.compression-level:6}")
+    private int zipCompressionLevel;
+
+    @Value("${app.archive.zstd-level:3}")
+    private int zstdLevel;
+
+    @Value("${app.archive.zstd-workers:0}")
+    private int zstdWorkers;
+
+    public ArchiveBuilder(S3Client s3Client, ObjectPrefetcher prefetcher, BucketScanner bucketScanner,
+            TombstoneStore tombstones, @Qualifier("s3IoExecutor") ExecutorService ioExecutor) {
+        this.s3Client = s3Client;
+        this.prefetcher = prefetcher;
+        this.bucketScanner = bucketScanner;
+        this.tombstones = tombstones;
+        this.ioExecutor = ioExecutor;
+    }
+
+    /**
+     * Called on the writing thread after each entry.
+     */
+    public interface Progress {
+        void entryWritten(S3Object obj);
+    }
+
+    private interface ObjectSource {
+        void feed(ObjectPrefetcher.Pipeline<?> pipeline) throws IOException;
+    }
+
+    /**
+     * Archives everything under prefix (which ends in "/"), named relative to
+     * it, streaming the listing as it goes.
+     */
+    public void writeFolder(String prefix, ArchiveFormat format, OutputStream os, Progress progress)
+            throws IOException {
+        write(format, os, obj -> obj.key().substring(prefix.length()), progress,
+                pipeline -> feedFolder(prefix, pipeline));
+    }
+
+    /**
+     * Archives a selection of files and folders (keys ending in "/") as one
+     * stream. Keys already covered by a selected folder are dropped, so
+     * overlapping selections produce each object once. Entries are named
+     * relative to the deepest folder containing the whole selection, so a
+     * selected folder appears in the archive under its own name. Selected
+     * files that no longer exist are skipped.
+     */
+    public void writeSelection(Collection<String> keys, ArchiveFormat format, OutputStream os, Progress progress)
+            throws IOException {
+        List<String> selection = KeySelection.normalize(keys);
+        String base = KeySelection.commonParent(selection);
+
+        // Look up the selected files up front, in parallel, rather than one HEAD per entry
+        Map<String, CompletableFuture<S3Object>> files = new HashMap<>();
+        for (String key : selection) {
+            if (!key.endsWith("/"))
+                files.put(key, CompletableFuture.supplyAsync(() -> head(key), ioExecutor));
+        }
+
+        try {
+            write(format, os, obj -> obj.key().substring(base.length()), progress, pipeline -> {
+                for (String key : selection) {
+                    if (key.endsWith("/")) {
+                        feedFolder(key, pipeline);
+                        continue;
+                    }
+                    S3Object obj;
+                    try {
+                        obj = files.get(key).join();
+                    } catch (CompletionException e) {
+                        throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+                    }
+                    if (obj != null && !tombstones.hides(obj.key(), obj.lastModified()))
+                        pipeline.add(obj);
+                }
+            });
+        } finally {
+            files.values().forEach(f -> f.cancel(false));
+        }
+    }
+
+    private void feedFolder(String prefix, ObjectPrefetcher.Pipeline<?> pipeline) throws IOException {
+        try {
+            bucketScanner.scan(prefix, page -> {
+                for (S3Object obj : page) {
+                    if (obj.key().endsWith("/") || tombstones.hides(obj.key(), obj.lastModified())) {
+                        continue; // Skip folder markers and trashed objects
+                    }
+                    try {
+                        pipeline.add(obj);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private S3Object head(String key) {
+        S3Object obj = S3Objects.head(s3Client, bucketName, key);
+        if (obj == null)
+            log.warn("[ArchiveBuilder] Skipping missing key {}", key);
+        return obj;
+    }
+
+    /**
+     * Archives the given objects in order under the names the function gives.
+     * The caller has already left out trashed objects.
+     */
+    public void writeObjects(Collection<S3Object> objects, Function<S3Object, String> names, ArchiveFormat format,
+            OutputStream os, Progress progress) throws IOException {
+        write(format, os, names, progress, pipeline -> {
+            for (S3Object obj : objects)
+                pipeline.add(obj);
+        });
+    }
+
+    private void write(ArchiveFormat format, OutputStream os, Function<S3Object, String> names, Progress progress,
+            ObjectSource source) throws IOException {
+        OutputStream target = new KeepOpen(os);
+        if (format == ArchiveFormat.TAR_ZST) {
+            try (ZstdOutputStream zstd = new ZstdOutputStream(target, zstdLevel)) {
+                zstd.setWorkers(zstdWorkers > 0 ? zstdWorkers : Runtime.getRuntime().availableProcessors());
+                write(new TarArchiveWriter(zstd), names, progress, source);
+            }
+        } else if (format == ArchiveFormat.TAR) {
+            write(new TarArchiveWriter(target), names, progress, source);
+        } else {
+            write(new ZipArchiveWriter(target, zipCompressionLevel), names, progress, source);
+        }
+        os.flush();
+    }
+
+    private <T extends Closeable> void write(ArchiveWriter<T> writer, Function<S3Object, String> names,
+            Progress progress, ObjectSource source) throws IOException {
+        try (ObjectPrefetcher.Pipeline<T> pipeline = prefetcher.pipeline(
+                // Preparation (compression) runs on the CPU pool
+                (obj, content) -> writer.prepare(names.apply(obj), obj.lastModified(), content),
+                (obj, entry) -> {
+                    writer.write(entry);
+                    if (progress != null)
+                        progress.entryWritten(obj);
+                })) {
+            source.feed(pipeline);
+            pipeline.finish();
+            writer.finish();
+        }
+    }
+
+    /**
+     * Lets a compressor be closed (to end its frame) without closing the
+     * caller's stream, which may be a response or an upload in progress.
+     */
+    private static final class KeepOpen extends FilterOutputStream {
+        KeepOpen(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+}
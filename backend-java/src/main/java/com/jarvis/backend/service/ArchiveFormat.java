@@ -0,0 +1,45 @@
+package com.jarvis.backend.service;
+
+import java.util.Locale;
+
+/**
+ * Formats a folder can be downloaded in.
+ */
+public enum ArchiveFormat {
+    ZIP("zip", "application/zip"),
+    TAR("tar", "application/x-tar"),
+    TAR_ZST("tar.zst", "application/zstd");
+
+    private final String extension;
+    private final String contentType;
+
+    ArchiveFormat(String extension, String contentType) {
+        this.extension = extension;
+        this.contentType = contentType;
+    }
+
+    public String extension() {
+        return extension;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    /**
+     * Parses a request parameter such as "zip", "tar" or "tar.zst"; null or
+     * blank means ZIP.
+     */
+    public static ArchiveFormat fromParam(String value) {
+        if (value == null || value.isBlank())
+            return ZIP;
+        String normalized = value.trim().toLowerCase(Locale.ROOT);
+        for (ArchiveFormat format : values()) {
+            if (format.extension.equals(normalized) || format.name().equalsIgnoreCase(normalized))
+                return format;
+        }
+        if (normalized.equals("tzst") || normalized.equals("zst"))
+            return TAR_ZST;
+        throw new IllegalArgumentException("Unsupported archive format: " + value);
+    }
+}
@@ -0,0 +1,274 @@
+package com.jarvis.backend.service;
+
+import com.jarvis.backend.dto.JobStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Builds folder archives into the bucket as background jobs, for folders
+ * too large to stream through one request.
+ *
+ * A job lists the folder once and fingerprints it (keys, ETags, sizes and
+ * format). The archive is stored under .metadata/archives/&lt;fingerprint&gt;,
+ * so a repeat request for an unchanged folder finds it and completes as soon
+ * as the listing is done. Otherwise the archive is built from that same
+ * listing and written with a streaming multipart upload; the client polls
+ * the job and downloads the result with a presigned URL. A job for a folder
+ * state that is already being built waits for that build, and builds it
+ * itself if the other one fails or is cancelled. Archives older than
+ * app.archive.retention-hours are purged.
+ */
+@Service
+@Slf4j
+public class ArchiveJobService {
+
+    public static final String JOB_TYPE = "ARCHIVE";
+
+    private static final String ARCHIVE_ROOT = ".metadata/archives/";
+
+    private final S3Client s3Client;
+    private final S3Presigner s3Presigner;
+    private final BucketScanner bucketScanner;
+    private final ArchiveBuilder archiveBuilder;
+    private final StreamingUploader streamingUploader;
+    private final JobService jobService;
+    private final TombstoneStore tombstones;
+
+    // Archive key -> build in progress, so identical jobs share one build
+    private final Map<String, CompletableFuture<Void>> building = new ConcurrentHashMap<>();
+    // Archive key -> when a URL for it was last handed out
+    private final Map<String, Long> lastServed = new ConcurrentHashMap<>();
+
+    @Value("${aws.s3.bucket-name}")
+    private String bucketName;
+
+    @Value("${app.archive.retention-hours:24}")
+    private long retentionHours;
+
+    public ArchiveJobService(S3Client s3Client, S3Presigner s3Presigner, BucketScanner bucketScanner,
+            ArchiveBuilder archiveBuilder, StreamingUploader streamingUploader, JobService jobService,
+            TombstoneStore tombstones) {
+        this.s3Client = s3Client;
+        this.s3Presigner = s3Presigner;
+        this.bucketScanner = bucketScanner;
+        this.archiveBuilder = archiveBuilder;
+        this.streamingUploader = streamingUploader;
+        this.jobService = jobService;
+        this.tombstones = tombstones;
+    }
+
+    public JobStatus start(String prefix, ArchiveFormat format) {
+        String finalPrefix = prefix == null || prefix.isEmpty() || prefix.endsWith("/") ? prefix : prefix + "/";
+        String folder = finalPrefix == null ? "" : finalPrefix;
+        return jobService.submit(JOB_TYPE, folder, ctx -> run(folder, format, ctx));
+    }
+
+    /**
+     * Current state of an archive job, or null if unknown. Includes a
+     * download URL once the archive is ready.
+     */
+    public JobStatus getStatus(String id) {
+        JobStatus status = jobService.get(id);
+        return status == null || !JOB_TYPE.equals(status.getType()) ? null : withDownloadUrl(status);
+    }
+
+    private Map<String, Object> run(String prefix, ArchiveFormat format, JobContext ctx) {
+        List<S3Object> objects = new ArrayList<>();
+        bucketScanner.scan(prefix, page -> {
+            ctx.checkCancelled();
+            for (S3Object obj : page) {
+                if (!obj.key().endsWith("/") && !obj.key().startsWith(".metadata/")
+                        && !tombstones.hides(obj.key(), obj.lastModified()))
+                    objects.add(obj);
+            }
+        });
+        objects.sort(Comparator.comparing(S3Object::key, BucketKeyIndex.KEY_ORDER));
+        long totalBytes = objects.stream().mapToLong(o -> o.size() != null ? o.size() : 0).sum();
+        ctx.setTotals(objects.size(), totalBytes);
+
+        String archiveKey = ARCHIVE_ROOT + fingerprint(format, objects) + "." + format.extension();
+        boolean reused = true;
+        while (true) {
+            CompletableFuture<Void> ours = new CompletableFuture<>();
+            CompletableFuture<Void> existing = building.putIfAbsent(archiveKey, ours);
+            if (existing != null) {
+                // Same folder state is already being built
+                if (awaitBuild(existing, ctx))
+                    break;
+                continue;
+            }
+            try {
+                if (!exists(archiveKey)) {
+                    reused = false;
+                    build(prefix, format, objects, archiveKey, ctx);
+                }
+                ours.complete(null);
+            } catch (RuntimeException e) {
+                ours.completeExceptionally(e);
+                throw e;
+            } finally {
+                building.remove(archiveKey, ours);
+            }
+            break;
+        }
+
+        if (reused)
+            ctx.advance(objects.size(), totalBytes);
+        lastServed.put(archiveKey, System.currentTimeMillis());
+        log.info("[ArchiveJobService] Archive of \"{}\" ready ({} objects, {} bytes{})", prefix, objects.size(),
+                totalBytes, reused ? ", reused" : "");
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("archiveKey", archiveKey);
+        result.put("name", downloadName(prefix, format));
+        result.put("reused", reused);
+        return result;
+    }
+
+    private void build(String prefix, ArchiveFormat format, List<S3Object> objects, String archiveKey,
+            JobContext ctx) {
+        StreamingUploader.UploadStream out = streamingUploader.open(archiveKey, format.contentType());
+        try {
+            archiveBuilder.writeObjects(objects, obj -> obj.key().substring(prefix.length()), format, out,
+                    obj -> {
+                        ctx.checkCancelled();
+                        ctx.advance(1, obj.size() != null ? obj.size() : 0);
+                    });
+            out.close();
+        } catch (Exception e) {
+            out.abort();
+            throw new RuntimeException("Failed to build archive of " + prefix, e);
+        }
+    }
+
+    /**
+     * Waits for another job's build, staying cancellable. False if that
+     * build failed or was cancelled, so the caller builds it instead.
+     */
+    private static boolean awaitBuild(CompletableFuture<Void> build, JobContext ctx) {
+        while (true) {
+            ctx.checkCancelled();
+            try {
+                build.get(1, TimeUnit.SECONDS);
+                return true;
+            } catch (TimeoutException e) {
+                // still building
+            } catch (ExecutionException | CancellationException e) {
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for archive build");
+            }
+        }
+    }
+
+    private boolean exists(String key) {
+        return S3Objects.head(s3Client, bucketName, key) != null;
+    }
+
+    /**
+     * SHA-256 over the format and every object's key, ETag and size, in key
+     * order. Any upload, overwrite or delete under the folder changes it.
+     */
+    static String fingerprint(ArchiveFormat format, List<S3Object> objects) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(format.name().getBytes(StandardCharsets.UTF_8));
+            for (S3Object obj : objects) {
+                String line = "\n" + obj.key() + "\0" + obj.eTag() + "\0" + obj.size();
+                digest.update(line.getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Adds a presigned download URL to the status of a finished archive job.
+     */
+    @SuppressWarnings("unchecked")
+    public JobStatus withDownloadUrl(JobStatus status) {
+        if (!JobService.DONE.equals(status.getState()) || !(status.getResult() instanceof Map))
+            return status;
+        Map<String, Object> result = new LinkedHashMap<>((Map<String, Object>) status.getResult());
+        String archiveKey = (String) result.get("archiveKey");
+        result.put("url", presign(archiveKey, (String) result.get("name")));
+        lastServed.put(archiveKey, System.currentTimeMillis());
+        return status.toBuilder().result(result).build();
+    }
+
+    private static String downloadName(String prefix, ArchiveFormat format) {
+        String trimmed = prefix.endsWith("/") ? prefix.substring(0, prefix.length() - 1) : prefix;
+        String folderName = trimmed.isEmpty() ? "download" : trimmed.substring(trimmed.lastIndexOf('/') + 1);
+        return folderName + "." + format.extension();
+    }
+
+    private String presign(String key, String fileName) {
+        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .responseContentDisposition("attachment; filename=\"" + fileName + "\"")
+                .build();
+        return s3Presigner.presignGetObject(GetObjectPresignRequest.builder()
+                .signatureDuration(PresignedUrlCache.SIGNATURE_DURATION)
+                .getObjectRequest(getObjectRequest)
+                .build()).url().toString();
+    }
+
+    // --- Retention ---
+
+    /**
+     * Deletes archives past retention, unless a URL for one was handed out
+     * recently enough to still be in use.
+     */
+    @Scheduled(fixedDelayString = "${app.archive.purge-interval-ms:3600000}",
+            initialDelayString = "${app.archive.purge-interval-ms:3600000}")
+    public void purgeExpired() {
+        Instant cutoff = Instant.now().minus(Duration.ofHours(retentionHours));
+        long servedCutoff = System.currentTimeMillis() - PresignedUrlCache.SIGNATURE_DURATION.toMillis();
+
+        List<ObjectIdentifier> expired = new ArrayList<>();
+        bucketScanner.scan(ARCHIVE_ROOT, page -> {
+            for (S3Object obj : page) {
+                if (obj.lastModified().isBefore(cutoff) && !building.containsKey(obj.key())
+                        && lastServed.getOrDefault(obj.key(), 0L) < servedCutoff)
+                    expired.add(ObjectIdentifier.builder().key(obj.key()).build());
+            }
+        });
+        for (int i = 0; i < expired.size(); i += 1000) {
+            List<ObjectIdentifier> batch = expired.subList(i, Math.min(i + 1000, expired.size()));
+            s3Client.deleteObjects(DeleteObjectsRequest.builder()
+                    .bucket(bucketName)
+                    .delete(Delete.builder().objects(batch).quiet(true).build())
+                    .build());
+        }
+        expired.forEach(id -> lastServed.remove(id.key()));
+        if (!expired.isEmpty())
+            log.info("[ArchiveJobService] Purged {} archives", expired.size());
+    }
+}
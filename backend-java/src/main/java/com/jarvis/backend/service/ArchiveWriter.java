@@ -0,0 +1,25 @@
+package com.jarvis.backend.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * A streaming archive format. prepare() may run on any thread, several at
+ * once; write() and finish() are called in order from the writing thread.
+ */
+public interface ArchiveWriter<T extends Closeable> {
+
+    /**
+     * Turns an object's content into an entry. Takes ownership of the
+     * content.
+     */
+    T prepare(String name, Instant modified, ObjectPrefetcher.Content content) throws IOException;
+
+    void write(T entry) throws IOException;
+
+    /**
+     * Ends the archive. Does not close the underlying stream.
+     */
+    void finish() throws IOException;
+}
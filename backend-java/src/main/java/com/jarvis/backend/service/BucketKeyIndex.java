@@ -0,0 +1,642 @@
+package com.jarvis.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of every key in the bucket, able to answer ListObjectsV2
+ * style queries (prefix, delimiter, continuation) without calling S3.
+ *
+ * Keys are held in a sorted, front-coded byte array: each block of
+ * {@link #BLOCK_SIZE} keys stores its first key in full and the rest as
+ * (shared prefix length, suffix). Sizes and timestamps live in primitive
+ * arrays. Mutations made by the service go into a small sorted overlay that is
+ * folded into a new base once it grows past a sixteenth of the base (at least
+ * {@link #COMPACT_THRESHOLD}), and a periodic full scan rebuilds the base to
+ * pick up changes made elsewhere. The fold is encoded outside the lock, so
+ * listings are not held up by it.
+ */
+@Component
+@Slf4j
+public class BucketKeyIndex {
+
+    private static final int BLOCK_SIZE = 16;
+    private static final int COMPACT_THRESHOLD = 4096;
+    private static final String TOKEN_PREFIX = "ki1.";
+
+    /**
+     * S3 orders keys by their UTF-8 bytes, which is code point order rather
+     * than the UTF-16 order of {@link String#compareTo}.
+     */
+    public static final Comparator<String> KEY_ORDER = BucketKeyIndex::compareKeys;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private KeyBlocks base;
+    private final TreeMap<String, Entry> overlay = new TreeMap<>(KEY_ORDER);
+    private boolean compacting; // guarded by the write lock
+
+    // Mutations seen while a rebuild scan is running, replayed on install
+    private Map<String, Entry> pending;
+
+    public boolean isReady() {
+        lock.readLock().lock();
+        try {
+            return base != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(String key, long size, Instant lastModified) {
+        record(key, new Entry(size, lastModified.toEpochMilli(), false));
+    }
+
+    public void remove(String key) {
+        record(key, Entry.DELETED);
+    }
+
+    private void record(String key, Entry entry) {
+        boolean compact;
+        lock.writeLock().lock();
+        try {
+            if (base == null && pending == null)
+                return;
+            if (pending != null)
+                pending.put(key, entry);
+            if (base != null)
+                overlay.put(key, entry);
+            compact = compactDue();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (compact)
+            compact();
+    }
+
+    /**
+     * Size of an indexed key, or null if the key is not present.
+     */
+    public Long sizeOf(String key) {
+        S3Object o = find(key);
+        return o != null ? o.size() : null;
+    }
+
+    /**
+     * Point lookup of a single key, or null if the key is not present.
+     */
+    public S3Object find(String key) {
+        lock.readLock().lock();
+        try {
+            Entry e = overlay.get(key);
+            if (e != null)
+                return e.deleted ? null : toS3Object(key, e.size, e.lastModified);
+            if (base == null)
+                return null;
+            int idx = base.lowerBound(key);
+            if (idx < base.count && base.cursor(idx).nextKey().equals(key))
+                return toS3Object(key, base.sizes[idx], base.lastModified[idx]);
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return base == null ? 0 : base.count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // --- Rebuild ---
+
+    /**
+     * Starts a rebuild. Mutations recorded from now on are replayed over the
+     * scanned result when it is installed, so nothing written during the scan
+     * is lost.
+     */
+    public Builder newBuilder() {
+        lock.writeLock().lock();
+        try {
+            pending = new HashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return new Builder();
+    }
+
+    public void install(Builder builder) {
+        KeyBlocks scanned = builder.build();
+        boolean compact;
+        lock.writeLock().lock();
+        try {
+            base = scanned;
+            overlay.clear();
+            if (pending != null)
+                overlay.putAll(pending);
+            pending = null;
+            compact = compactDue();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("[BucketKeyIndex] Installed index with {} keys", scanned.count);
+        if (compact)
+            compact();
+    }
+
+    public void abandon() {
+        lock.writeLock().lock();
+        try {
+            pending = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Whether the overlay has outgrown the base. Scaling with the base keeps
+     * a large move or delete from re-encoding a big index over and over.
+     * Callers must hold the write lock.
+     */
+    private boolean compactDue() {
+        return base != null && !compacting
+                && overlay.size() > Math.max(COMPACT_THRESHOLD, base.count / 16);
+    }
+
+    /**
+     * Folds the overlay into a new base. The merge is encoded from a snapshot
+     * without holding the lock; entries written meanwhile stay in the overlay
+     * on top of the new base.
+     */
+    private void compact() {
+        KeyBlocks snapshotBase;
+        TreeMap<String, Entry> snapshotOverlay;
+        lock.writeLock().lock();
+        try {
+            if (!compactDue())
+                return;
+            compacting = true;
+            snapshotBase = base;
+            snapshotOverlay = new TreeMap<>(overlay);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        KeyBlocks merged = null;
+        try {
+            Encoder encoder = new Encoder();
+            MergedCursor cursor = new MergedCursor(snapshotBase, snapshotOverlay, "");
+            for (IndexedObject o = cursor.next(); o != null; o = cursor.next()) {
+                encoder.add(o.key, o.size, o.lastModified);
+            }
+            merged = encoder.finish();
+        } finally {
+            lock.writeLock().lock();
+            try {
+                compacting = false;
+                // A rebuild installed meanwhile supersedes the merge
+                if (merged != null && base == snapshotBase) {
+                    base = merged;
+                    snapshotOverlay.forEach(overlay::remove);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // --- Listing ---
+
+    public static boolean isIndexToken(String token) {
+        return token != null && token.startsWith(TOKEN_PREFIX);
+    }
+
+    /**
+     * Translates an index continuation token into a StartAfter value, for
+     * when a listing that started on the index has to continue against S3.
+     */
+    public static String startAfterFromToken(String token, boolean recursive) {
+        String last = decodeToken(token);
+        if (!recursive && last.endsWith("/")) {
+            // Skip everything under the common prefix that was already returned
+            return last + new String(Character.toChars(Character.MAX_CODE_POINT));
+        }
+        return last;
+    }
+
+    /**
+     * Lists keys the way ListObjectsV2 would, with "/" as the delimiter unless
+     * recursive. maxKeys counts both objects and common prefixes.
+     */
+    public ListObjectsV2Response list(String prefix, boolean recursive, int maxKeys, String continuationToken) {
+        String start = prefix;
+        String exclusiveStart = null;
+        if (isIndexToken(continuationToken)) {
+            String last = decodeToken(continuationToken);
+            if (!recursive && last.endsWith("/") && last.length() > prefix.length()) {
+                start = skipPast(last);
+            } else {
+                start = last;
+                exclusiveStart = last;
+            }
+        }
+
+        List<S3Object> contents = new ArrayList<>();
+        List<CommonPrefix> commonPrefixes = new ArrayList<>();
+        String lastEmitted = null;
+        boolean truncated = false;
+        int emitted = 0;
+
+        lock.readLock().lock();
+        try {
+            MergedCursor cursor = new MergedCursor(base, overlay, start);
+            for (IndexedObject o = cursor.next(); o != null; o = cursor.next()) {
+                if (o.key.equals(exclusiveStart))
+                    continue;
+                if (!o.key.startsWith(prefix))
+                    break;
+                if (emitted == maxKeys) {
+                    truncated = true;
+                    break;
+                }
+
+                int slash = recursive ? -1 : o.key.indexOf('/', prefix.length());
+                if (slash >= 0) {
+                    String commonPrefix = o.key.substring(0, slash + 1);
+                    commonPrefixes.add(CommonPrefix.builder().prefix(commonPrefix).build());
+                    lastEmitted = commonPrefix;
+                    cursor.seek(skipPast(commonPrefix));
+                } else {
+                    contents.add(toS3Object(o.key, o.size, o.lastModified));
+                    lastEmitted = o.key;
+                }
+                emitted++;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return ListObjectsV2Response.builder()
+                .prefix(prefix)
+                .contents(contents)
+                .commonPrefixes(commonPrefixes)
+                .keyCount(emitted)
+                .isTruncated(truncated)
+                .nextContinuationToken(truncated ? encodeToken(lastEmitted) : null)
+                .build();
+    }
+
+    private static S3Object toS3Object(String key, long size, long lastModified) {
+        return S3Object.builder()
+                .key(key)
+                .size(size)
+                .lastModified(Instant.ofEpochMilli(lastModified))
+                .build();
+    }
+
+    /**
+     * First key that sorts after every key starting with the given prefix,
+     * which always ends in the "/" delimiter.
+     */
+    private static String skipPast(String commonPrefix) {
+        return commonPrefix.substring(0, commonPrefix.length() - 1) + (char) ('/' + 1);
+    }
+
+    private static String encodeToken(String lastKey) {
+        return TOKEN_PREFIX + Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(lastKey.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeToken(String token) {
+        byte[] bytes = Base64.getUrlDecoder().decode(token.substring(TOKEN_PREFIX.length()));
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static int compareKeys(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        for (int i = 0; i < n; i++) {
+            char x = a.charAt(i);
+            char y = b.charAt(i);
+            if (x != y) {
+                boolean xs = Character.isSurrogate(x);
+                boolean ys = Character.isSurrogate(y);
+                // Supplementary code points sort after every BMP character
+                if (xs != ys)
+                    return xs ? 1 : -1;
+                return Character.compare(x, y);
+            }
+        }
+        return Integer.compare(a.length(), b.length());
+    }
+
+    // --- Internals ---
+
+    private static final class Entry {
+        static final Entry DELETED = new Entry(0, 0, true);
+
+        final long size;
+        final long lastModified;
+        final boolean deleted;
+
+        Entry(long size, long lastModified, boolean deleted) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.deleted = deleted;
+        }
+    }
+
+    private static final class IndexedObject {
+        final String key;
+        final long size;
+        final long lastModified;
+
+        IndexedObject(String key, long size, long lastModified) {
+            this.key = key;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Walks a base and an overlay together in key order, letting overlay
+     * entries replace or hide base entries. Callers must hold the lock unless
+     * both are private snapshots.
+     */
+    private static final class MergedCursor {
+        private final KeyBlocks base;
+        private final NavigableMap<String, Entry> overlay;
+        private KeyBlocks.Cursor baseCursor;
+        private Iterator<Map.Entry<String, Entry>> overlayIt;
+        private String baseKey;
+        private Map.Entry<String, Entry> overlayEntry;
+
+        MergedCursor(KeyBlocks base, NavigableMap<String, Entry> overlay, String from) {
+            this.base = base;
+            this.overlay = overlay;
+            seek(from);
+        }
+
+        void seek(String from) {
+            baseCursor = base == null ? null : base.cursor(base.lowerBound(from));
+            baseKey = baseCursor != null ? baseCursor.nextKey() : null;
+            overlayIt = overlay.tailMap(from, true).entrySet().iterator();
+            overlayEntry = overlayIt.hasNext() ? overlayIt.next() : null;
+        }
+
+        IndexedObject next() {
+            while (baseKey != null || overlayEntry != null) {
+                int cmp = baseKey == null ? 1
+                        : overlayEntry == null ? -1
+                        : compareKeys(baseKey, overlayEntry.getKey());
+
+                if (cmp < 0) {
+                    IndexedObject o = new IndexedObject(baseKey, baseCursor.size(), baseCursor.lastModified());
+                    baseKey = baseCursor.nextKey();
+                    return o;
+                }
+
+                Map.Entry<String, Entry> e = overlayEntry;
+                overlayEntry = overlayIt.hasNext() ? overlayIt.next() : null;
+                if (cmp == 0)
+                    baseKey = baseCursor.nextKey();
+                if (!e.getValue().deleted)
+                    return new IndexedObject(e.getKey(), e.getValue().size, e.getValue().lastModified);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Accumulates a scan into sorted front-coded runs. Keys normally arrive in
+     * order, but a new run is started whenever they do not, and the runs are
+     * merged when the index is built.
+     */
+    public static final class Builder {
+        private final List<KeyBlocks> runs = new ArrayList<>();
+        private Encoder current = new Encoder();
+
+        public void add(String key, long size, Instant lastModified) {
+            long modified = lastModified != null ? lastModified.toEpochMilli() : 0L;
+            if (current.last != null && compareKeys(key, current.last) <= 0) {
+                runs.add(current.finish());
+                current = new Encoder();
+            }
+            current.add(key, size, modified);
+        }
+
+        KeyBlocks build() {
+            runs.add(current.finish());
+            if (runs.size() == 1)
+                return runs.get(0);
+
+            PriorityQueue<KeyBlocks.Cursor> heap = new PriorityQueue<>(
+                    Comparator.comparing(KeyBlocks.Cursor::currentKey, KEY_ORDER));
+            for (KeyBlocks run : runs) {
+                KeyBlocks.Cursor c = run.cursor(0);
+                if (c.nextKey() != null)
+                    heap.add(c);
+            }
+
+            Encoder merged = new Encoder();
+            while (!heap.isEmpty()) {
+                KeyBlocks.Cursor c = heap.poll();
+                String key = c.currentKey();
+                if (merged.last == null || compareKeys(key, merged.last) > 0)
+                    merged.add(key, c.size(), c.lastModified());
+                if (c.nextKey() != null)
+                    heap.add(c);
+            }
+            return merged.finish();
+        }
+    }
+
+    private static final class Encoder {
+        private byte[] data = new byte[1 << 16];
+        private int length;
+        private int[] blockOffsets = new int[64];
+        private final List<String> blockHeads = new ArrayList<>();
+        private long[] sizes = new long[1024];
+        private long[] lastModified = new long[1024];
+        private int count;
+        private byte[] prevBytes = new byte[0];
+        private String last;
+
+        void add(String key, long size, long modified) {
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            if (count == sizes.length) {
+                sizes = Arrays.copyOf(sizes, count * 2);
+                lastModified = Arrays.copyOf(lastModified, count * 2);
+            }
+
+            if (count % BLOCK_SIZE == 0) {
+                int block = count / BLOCK_SIZE;
+                if (block == blockOffsets.length)
+                    blockOffsets = Arrays.copyOf(blockOffsets, block * 2);
+                blockOffsets[block] = length;
+                blockHeads.add(key);
+                writeVarInt(bytes.length);
+                writeBytes(bytes, 0, bytes.length);
+            } else {
+                int shared = 0;
+                int max = Math.min(bytes.length, prevBytes.length);
+                while (shared < max && bytes[shared] == prevBytes[shared])
+                    shared++;
+                writeVarInt(shared);
+                writeVarInt(bytes.length - shared);
+                writeBytes(bytes, shared, bytes.length - shared);
+            }
+
+            sizes[count] = size;
+            lastModified[count] = modified;
+            count++;
+            prevBytes = bytes;
+            last = key;
+        }
+
+        KeyBlocks finish() {
+            int blocks = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            return new KeyBlocks(Arrays.copyOf(data, length), Arrays.copyOf(blockOffsets, blocks),
+                    blockHeads.toArray(new String[0]), Arrays.copyOf(sizes, count),
+                    Arrays.copyOf(lastModified, count), count);
+        }
+
+        private void writeVarInt(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                data[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+        }
+
+        private void writeBytes(byte[] src, int off, int len) {
+            ensure(len);
+            System.arraycopy(src, off, data, length, len);
+            length += len;
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > data.length)
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + extra));
+        }
+    }
+
+    /**
+     * Immutable sorted run of front-coded keys.
+     */
+    private static final class KeyBlocks {
+        final byte[] data;
+        final int[] blockOffsets;
+        final String[] blockHeads;
+        final long[] sizes;
+        final long[] lastModified;
+        final int count;
+
+        KeyBlocks(byte[] data, int[] blockOffsets, String[] blockHeads, long[] sizes, long[] lastModified,
+                int count) {
+            this.data = data;
+            this.blockOffsets = blockOffsets;
+            this.blockHeads = blockHeads;
+            this.sizes = sizes;
+            this.lastModified = lastModified;
+            this.count = count;
+        }
+
+        /**
+         * Index of the first key that is >= the given key.
+         */
+        int lowerBound(String key) {
+            int lo = 0, hi = blockHeads.length - 1, block = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compareKeys(blockHeads[mid], key) <= 0) {
+                    block = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            if (block < 0)
+                return 0;
+
+            Cursor c = cursor(block * BLOCK_SIZE);
+            int idx = block * BLOCK_SIZE;
+            for (String k = c.nextKey(); k != null && compareKeys(k, key) < 0; k = c.nextKey())
+                idx++;
+            return idx;
+        }
+
+        Cursor cursor(int index) {
+            Cursor c = new Cursor(index - index % BLOCK_SIZE);
+            while (c.next < index)
+                c.nextKey();
+            return c;
+        }
+
+        final class Cursor {
+            private int next;
+            private int pos;
+            private byte[] buf = new byte[256];
+            private int bufLen;
+            private String currentKey;
+
+            Cursor(int blockStart) {
+                this.next = blockStart;
+                this.pos = blockStart < count ? blockOffsets[blockStart / BLOCK_SIZE] : data.length;
+            }
+
+            /**
+             * Decodes the next key, making it current, or returns null at the end.
+             */
+            String nextKey() {
+                if (next >= count) {
+                    currentKey = null;
+                    return null;
+                }
+                int shared = next % BLOCK_SIZE == 0 ? 0 : readVarInt();
+                int suffix = readVarInt();
+                if (shared + suffix > buf.length)
+                    buf = Arrays.copyOf(buf, Math.max(buf.length * 2, shared + suffix));
+                System.arraycopy(data, pos, buf, shared, suffix);
+                pos += suffix;
+                bufLen = shared + suffix;
+                next++;
+                currentKey = new String(buf, 0, bufLen, StandardCharsets.UTF_8);
+                return currentKey;
+            }
+
+            String currentKey() {
+                return currentKey;
+            }
+
+            long size() {
+                return sizes[next - 1];
+            }
+
+            long lastModified() {
+                return lastModified[next - 1];
+            }
+
+            private int readVarInt() {
+                int value = 0, shift = 0;
+                byte b;
+                do {
+                    b = data[pos++];
+                    value |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.jarvis.backend.service;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Lists everything under a prefix with several ListObjectsV2 calls in flight.
+ *
+ * The key space is split as it is discovered: the first levels are listed
+ * with a "/" delimiter and every common prefix found becomes a partition of
+ * its own, and a level that turns out to be flat is cut into start-after
+ * ranges. Partitions are listed concurrently, at most app.scan.parallelism
+ * at a time per scan, and their pages are handed to the consumer on the
+ * calling thread through a bounded queue, so a slow consumer holds the
+ * listers back instead of buffering the bucket in memory.
+ *
+ * Pages arrive in no particular order; each page is sorted on its own.
+ */
+@Component
+public class BucketScanner {
+
+    // Levels below this are listed without a delimiter, a page holds many small folders
+    private static final int MAX_SPLIT_DEPTH = 2;
+
+    // Split points for a flat level, in S3 (code point) order
+    private static final String RANGE_BOUNDARIES = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+    private static final Object END = new Object();
+
+    private final S3Client s3Client;
+    private final ExecutorService scanExecutor;
+
+    @Value("${aws.s3.bucket-name}")
+    private String bucketName;
+
+    @Value("${app.scan.parallelism:8}")
+    private int parallelism;
+
+    @Value("${app.scan.queued-pages:16}")
+    private int queuedPages;
+
+    public BucketScanner(S3Client s3Client, @Qualifier("s3ScanExecutor") ExecutorService scanExecutor) {
+        this.s3Client = s3Client;
+        this.scanExecutor = scanExecutor;
+    }
+
+    /**
+     * Feeds every object under prefix to the consumer, one listing page at a
+     * time. Returns once the whole prefix has been consumed; an exception
+     * from a lister or from the consumer stops the scan and is rethrown.
+     */
+    public void scan(String prefix, Consumer<List<S3Object>> consumer) {
+        Scan scan = new Scan();
+        scan.schedule(() -> scan.listLevel(prefix, 0));
+        scan.drain(consumer);
+    }
+
+    private final class Scan {
+        private final BlockingQueue<Object> pages = new ArrayBlockingQueue<>(queuedPages);
+        private final Deque<Runnable> backlog = new ArrayDeque<>();
+        private int running; // guarded by this
+        private volatile boolean cancelled;
+        private volatile RuntimeException failure;
+
+        void schedule(Runnable partition) {
+            synchronized (this) {
+                if (running >= parallelism) {
+                    backlog.add(partition);
+                    return;
+                }
+                running++;
+            }
+            scanExecutor.execute(() -> run(partition));
+        }
+
+        private void run(Runnable partition) {
+            Runnable next = partition;
+            while (next != null) {
+                try {
+                    if (!cancelled)
+                        next.run();
+                } catch (CancellationException e) {
+                    // consumer gave up, nothing to report
+                } catch (RuntimeException e) {
+                    fail(e);
+                }
+                synchronized (this) {
+                    next = cancelled ? null : backlog.poll();
+                    if (next == null && --running > 0)
+                        return;
+                }
+            }
+            // Last partition finished and nothing is waiting
+            if (!cancelled)
+                offer(END);
+        }
+
+        void drain(Consumer<List<S3Object>> consumer) {
+            try {
+                while (true) {
+                    Object item = pages.take();
+                    if (failure != null)
+                        throw failure;
+                    if (item == END)
+                        break;
+                    @SuppressWarnings("unchecked")
+                    List<S3Object> page = (List<S3Object>) item;
+                    consumer.accept(page);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancelled = true;
+                throw new RuntimeException("Interrupted while scanning bucket", e);
+            } catch (RuntimeException e) {
+                cancelled = true;
+                throw e;
+            }
+        }
+
+        private void fail(RuntimeException e) {
+            if (failure == null)
+                failure = e;
+            cancelled = true;
+            // Wake the consumer even if the queue is full of pages it will now discard
+            pages.clear();
+            pages.offer(END);
+        }
+
+        private void emit(List<S3Object> objects) {
+            if (!objects.isEmpty() && !offer(objects))
+                throw new CancellationException();
+        }
+
+        private boolean offer(Object item) {
+            try {
+                while (!cancelled) {
+                    if (pages.offer(item, 100, TimeUnit.MILLISECONDS))
+                        return true;
+                }
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException();
+            }
+        }
+
+        /**
+         * Lists one level with a delimiter. Subfolders are scheduled as their
+         * own partitions; if the level is flat and spans several pages, the
+         * rest of it is split into key ranges.
+         */
+        void listLevel(String prefix, int depth) {
+            if (depth >= MAX_SPLIT_DEPTH) {
+                listRange(prefix, null, null);
+                return;
+            }
+
+            String continuationToken = null;
+            do {
+                ListObjectsV2Response res = s3Client.listObjectsV2(ListObjectsV2Request.builder()
+                        .bucket(bucketName)
+                        .prefix(prefix)
+                        .delimiter("/")
+                        .continuationToken(continuationToken)
+                        .build());
+
+                for (CommonPrefix p : res.commonPrefixes())
+                    schedule(() -> listLevel(p.prefix(), depth + 1));
+                emit(res.contents());
+
+                if (!Boolean.TRUE.equals(res.isTruncated()))
+                    return;
+
+                List<S3Object> contents = res.contents();
+                List<CommonPrefix> prefixes = res.commonPrefixes();
+                String lastKey = contents.isEmpty() ? null : contents.get(contents.size() - 1).key();
+                String lastPrefix = prefixes.isEmpty() ? null : prefixes.get(prefixes.size() - 1).prefix();
+                if (lastKey != null && (lastPrefix == null || BucketKeyIndex.compareKeys(lastKey, lastPrefix) > 0)) {
+                    // Everything up to lastKey is covered; split what remains
+                    splitRanges(prefix, lastKey);
+                    return;
+                }
+                continuationToken = res.nextContinuationToken();
+            } while (true);
+        }
+
+        private void splitRanges(String prefix, String after) {
+            String lower = after;
+            for (char c : RANGE_BOUNDARIES.toCharArray()) {
+                String bound = prefix + c;
+                if (BucketKeyIndex.compareKeys(bound, lower) <= 0)
+                    continue;
+                String from = lower;
+                schedule(() -> listRange(prefix, from, bound));
+                lower = bound;
+            }
+            String from = lower;
+            schedule(() -> listRange(prefix, from, null));
+        }
+
+        /**
+         * Lists keys under prefix in (startAfter, upTo], either bound optional.
+         */
+        void listRange(String prefix, String startAfter, String upTo) {
+            String continuationToken = null;
+            do {
+                ListObjectsV2Response res = s3Client.listObjectsV2(ListObjectsV2Request.builder()
+                        .bucket(bucketName)
+                        .prefix(prefix)
+                        .startAfter(continuationToken == null ? startAfter : null)
+                        .continuationToken(continuationToken)
+                        .build());
+
+                List<S3Object> contents = res.contents();
+                if (upTo != null && !contents.isEmpty()
+                        && BucketKeyIndex.compareKeys(contents.get(contents.size() - 1).key(), upTo) > 0) {
+                    List<S3Object> inRange = new ArrayList<>();
+                    for (S3Object obj : contents) {
+                        if (BucketKeyIndex.compareKeys(obj.key(), upTo) > 0)
+                            break;
+                        inRange.add(obj);
+                    }
+                    emit(inRange);
+                    return;
+                }
+                emit(contents);
+
+                continuationToken = Boolean.TRUE.equals(res.isTruncated()) ? res.nextContinuationToken() : null;
+            } while (continuationToken != null);
+        }
+    }
+}
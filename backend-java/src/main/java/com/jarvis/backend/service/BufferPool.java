@@ -0,0 +1,65 @@
+package com.jarvis.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Fixed number of reusable part-sized buffers shared by all streaming
+ * transfers. Buffers are allocated on first use and recycled afterwards;
+ * once all of them are out, acquire() blocks until enough come back, which
+ * caps the heap used by transfers at app.upload.buffers x part size no
+ * matter how many run at once.
+ */
+@Component
+public class BufferPool {
+
+    // S3 rejects multipart parts smaller than this (except the last one)
+    private static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private final int bufferSize;
+    private final int buffers;
+    private final Semaphore available;
+    private final ConcurrentLinkedQueue<byte[]> free = new ConcurrentLinkedQueue<>();
+
+    public BufferPool(@Value("${app.upload.part-size-mb:8}") int partSizeMb,
+            @Value("${app.upload.buffers:32}") int buffers) {
+        this.bufferSize = Math.max(MIN_PART_SIZE, partSizeMb * 1024 * 1024);
+        this.buffers = buffers;
+        this.available = new Semaphore(buffers, true);
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * The most buffers one acquire() can ask for.
+     */
+    public int buffers() {
+        return buffers;
+    }
+
+    /**
+     * Takes count buffers at once, so a transfer never holds some of them
+     * while waiting for the rest.
+     */
+    public List<byte[]> acquire(int count) throws InterruptedException {
+        available.acquire(count);
+        List<byte[]> acquired = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] buffer = free.poll();
+            acquired.add(buffer != null ? buffer : new byte[bufferSize]);
+        }
+        return acquired;
+    }
+
+    public void release(List<byte[]> released) {
+        free.addAll(released);
+        available.release(released.size());
+    }
+}
@@ -0,0 +1,251 @@
+package com.jarvis.backend.service;
+
+import com.jarvis.backend.dto.BulkOperationResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Copies or moves everything under a key with server-side copies, keeping up
+ * to app.copy.concurrency of them in flight on the async client. Objects
+ * above the transfer threshold are copied in parts.
+ *
+ * The listing is streamed, so copying starts with the first page. For a
+ * move, sources are deleted in batches of 1,000 as their copies finish,
+ * never before. Completions are handled on the calling thread, which is
+ * where the listener is called. A failed copy or delete does not stop the
+ * rest; it is reported per key in the result. Progress goes to the
+ * JobContext; once it is cancelled no further copies start, those in flight
+ * finish (and their sources are deleted), and CancellationException is
+ * thrown.
+ */
+@Component
+@Slf4j
+public class BulkCopyEngine {
+
+    private static final int DELETE_BATCH = 1000;
+    private static final int MAX_REPORTED_FAILURES = 1000;
+
+    private final S3Client s3Client;
+    private final BucketScanner bucketScanner;
+    private final TransferEngine transferEngine;
+    private final ExecutorService ioExecutor;
+
+    @Value("${aws.s3.bucket-name}")
+    private String bucketName;
+
+    @Value("${app.copy.concurrency:64}")
+    private int concurrency;
+
+    public BulkCopyEngine(S3Client s3Client, BucketScanner bucketScanner, TransferEngine transferEngine,
+            @Qualifier("s3IoExecutor") ExecutorService ioExecutor) {
+        this.s3Client = s3Client;
+        this.bucketScanner = bucketScanner;
+        this.transferEngine = transferEngine;
+        this.ioExecutor = ioExecutor;
+    }
+
+    /**
+     * Told about each object as it is copied and, for a move, as its source
+     * is deleted. Called on the thread running the operation.
+     */
+    public interface Listener {
+        void copied(S3Object source, String destinationKey);
+
+        default void deleted(S3Object source) {
+        }
+    }
+
+    /**
+     * Copies key (a folder if it ends in "/", otherwise a single object) to
+     * the keys the destination function gives.
+     */
+    public BulkOperationResult copy(String key, UnaryOperator<String> destination, JobContext ctx,
+            Listener listener) {
+        return new Run(obj -> true, destination, ctx, listener, false).run(key);
+    }
+
+    /**
+     * Like copy, then deletes each source once its copy has succeeded.
+     */
+    public BulkOperationResult move(String key, UnaryOperator<String> destination, JobContext ctx,
+            Listener listener) {
+        return move(key, obj -> true, destination, ctx, listener);
+    }
+
+    /**
+     * Moves only the objects under key that match the filter; the rest stay
+     * where they are.
+     */
+    public BulkOperationResult move(String key, Predicate<S3Object> filter, UnaryOperator<String> destination,
+            JobContext ctx, Listener listener) {
+        return new Run(filter, destination, ctx, listener, true).run(key);
+    }
+
+    private final class Run {
+        private final Predicate<S3Object> filter;
+        private final UnaryOperator<String> destination;
+        private final JobContext ctx;
+        private final Listener listener;
+        private final boolean deleteSources;
+        // Completions, queued by whichever thread finished the request and run by the caller
+        private final BlockingQueue<Runnable> events = new LinkedBlockingQueue<>();
+        private final List<S3Object> pendingDeletes = new ArrayList<>();
+        private final Map<String, String> failures = new LinkedHashMap<>();
+        private int copiesInFlight;
+        private int deletesInFlight;
+        private long succeeded;
+        private long failed;
+        private long bytes;
+
+        Run(Predicate<S3Object> filter, UnaryOperator<String> destination, JobContext ctx, Listener listener,
+                boolean deleteSources) {
+            this.filter = filter;
+            this.destination = destination;
+            this.ctx = ctx;
+            this.listener = listener;
+            this.deleteSources = deleteSources;
+        }
+
+        BulkOperationResult run(String key) {
+            boolean isFolder = key.endsWith("/");
+            try {
+                bucketScanner.scan(key, page -> {
+                    for (S3Object obj : page) {
+                        // A file key is also a prefix of its neighbours ("a.txt" of "a.txt.bak")
+                        if ((isFolder || obj.key().equals(key)) && filter.test(obj))
+                            submit(obj);
+                    }
+                });
+            } finally {
+                // Settle what is in flight, so a listing failure does not leave copied sources undeleted
+                if (!Thread.currentThread().isInterrupted()) {
+                    while (copiesInFlight > 0)
+                        next();
+                    if (!pendingDeletes.isEmpty())
+                        flushDeletes();
+                    while (deletesInFlight > 0)
+                        next();
+                }
+            }
+
+            log.info("[BulkCopyEngine] {} {}: {} objects ({} bytes), {} failed", deleteSources ? "Moved" : "Copied",
+                    key, succeeded, bytes, failed);
+            return BulkOperationResult.builder()
+                    .succeeded(succeeded)
+                    .failed(failed)
+                    .bytes(bytes)
+                    .failures(failures)
+                    .build();
+        }
+
+        private void submit(S3Object obj) {
+            ctx.checkCancelled();
+            while (copiesInFlight >= concurrency)
+                next();
+            Runnable ready;
+            while ((ready = events.poll()) != null)
+                ready.run();
+
+            String target = destination.apply(obj.key());
+            long size = obj.size() != null ? obj.size() : 0;
+            ctx.expect(1, size);
+            CompletableFuture<Void> copy;
+            try {
+                copy = transferEngine.copyAsync(obj.key(), target, size);
+            } catch (RuntimeException e) {
+                copy = CompletableFuture.failedFuture(e);
+            }
+            copiesInFlight++;
+            copy.whenComplete((res, e) -> events.add(() -> copied(obj, target, e)));
+        }
+
+        private void copied(S3Object obj, String target, Throwable error) {
+            copiesInFlight--;
+            if (error != null) {
+                fail(obj.key(), "Copy failed: " + S3Objects.failureMessage(error));
+                return;
+            }
+            listener.copied(obj, target);
+            if (!deleteSources) {
+                succeed(obj);
+                return;
+            }
+            pendingDeletes.add(obj);
+            if (pendingDeletes.size() >= DELETE_BATCH)
+                flushDeletes();
+        }
+
+        private void flushDeletes() {
+            List<S3Object> batch = new ArrayList<>(pendingDeletes);
+            pendingDeletes.clear();
+            List<ObjectIdentifier> ids = new ArrayList<>(batch.size());
+            for (S3Object obj : batch)
+                ids.add(ObjectIdentifier.builder().key(obj.key()).build());
+
+            deletesInFlight++;
+            CompletableFuture.supplyAsync(() -> s3Client.deleteObjects(DeleteObjectsRequest.builder()
+                    .bucket(bucketName)
+                    .delete(Delete.builder().objects(ids).quiet(true).build())
+                    .build()), ioExecutor)
+                    .whenComplete((res, e) -> events.add(() -> deleted(batch, res, e)));
+        }
+
+        private void deleted(List<S3Object> batch, DeleteObjectsResponse res, Throwable error) {
+            deletesInFlight--;
+            Map<String, String> errors = new HashMap<>();
+            if (res != null && res.hasErrors()) {
+                for (S3Error err : res.errors())
+                    errors.put(err.key(), err.message());
+            }
+            for (S3Object obj : batch) {
+                String reason = error != null ? S3Objects.failureMessage(error) : errors.get(obj.key());
+                if (reason != null) {
+                    fail(obj.key(), "Copied but not deleted: " + reason);
+                } else {
+                    listener.deleted(obj);
+                    succeed(obj);
+                }
+            }
+        }
+
+        private void succeed(S3Object obj) {
+            long size = obj.size() != null ? obj.size() : 0;
+            succeeded++;
+            bytes += size;
+            ctx.advance(1, size);
+        }
+
+        private void fail(String key, String reason) {
+            failed++;
+            ctx.advance(1, 0);
+            if (failures.size() < MAX_REPORTED_FAILURES)
+                failures.put(key, reason);
+            log.warn("[BulkCopyEngine] {}: {}", key, reason);
+        }
+
+        private void next() {
+            try {
+                events.take().run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while copying objects", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.jarvis.backend.service;
+
+import com.jarvis.backend.dto.BulkOperationResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Deletes a selection of files and folders. Folders are expanded by
+ * streaming their full listing, and objects are deleted in DeleteObjects
+ * batches of 1,000 with up to app.delete.concurrency batches in flight, so
+ * deleting starts with the first listing page and large folders are not
+ * limited to one request at a time. Overlapping selections delete each
+ * object once.
+ *
+ * Completions are handled on the calling thread, which is where the
+ * listener is called. A failed batch or key does not stop the rest; it is
+ * reported per key in the result. Progress goes to the JobContext; once it
+ * is cancelled no further batches are sent, those in flight are waited for,
+ * and CancellationException is thrown.
+ */
+@Component
+@Slf4j
+public class BulkDeleteEngine {
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int MAX_REPORTED_FAILURES = 1000;
+
+    private final S3Client s3Client;
+    private final BucketScanner bucketScanner;
+    private final ExecutorService ioExecutor;
+
+    @Value("${aws.s3.bucket-name}")
+    private String bucketName;
+
+    @Value("${app.delete.concurrency:8}")
+    private int concurrency;
+
+    public BulkDeleteEngine(S3Client s3Client, BucketScanner bucketScanner,
+            @Qualifier("s3IoExecutor") ExecutorService ioExecutor) {
+        this.s3Client = s3Client;
+        this.bucketScanner = bucketScanner;
+        this.ioExecutor = ioExecutor;
+    }
+
+    /**
+     * Told about each object once S3 has deleted it. Called on the thread
+     * running the delete.
+     */
+    public interface Listener {
+        void deleted(S3Object obj);
+    }
+
+    public BulkOperationResult delete(Collection<String> keys, JobContext ctx, Listener listener) {
+        return delete(keys, obj -> true, ctx, listener);
+    }
+
+    /**
+     * Deletes only the selected objects that match the filter.
+     */
+    public BulkOperationResult delete(Collection<String> keys, Predicate<S3Object> filter, JobContext ctx,
+            Listener listener) {
+        return new Run(filter, ctx, listener).run(KeySelection.normalize(keys));
+    }
+
+    private final class Run {
+        private final Predicate<S3Object> filter;
+        private final JobContext ctx;
+        private final Listener listener;
+        // Completions, queued by the I/O pool and run by the caller
+        private final BlockingQueue<Runnable> events = new LinkedBlockingQueue<>();
+        private final List<S3Object> pending = new ArrayList<>();
+        private final Map<String, String> failures = new LinkedHashMap<>();
+        private int inFlight;
+        private long succeeded;
+        private long failed;
+        private long bytes;
+
+        Run(Predicate<S3Object> filter, JobContext ctx, Listener listener) {
+            this.filter = filter;
+            this.ctx = ctx;
+            this.listener = listener;
+        }
+
+        BulkOperationResult run(List<String> selection) {
+            List<String> files = new ArrayList<>();
+            try {
+                for (String key : selection) {
+                    if (key.endsWith("/")) {
+                        bucketScanner.scan(key, page -> page.forEach(this::add));
+                    } else {
+                        files.add(key);
+                    }
+                }
+                for (int i = 0; i < files.size(); i += BATCH_SIZE)
+                    headAll(files.subList(i, Math.min(i + BATCH_SIZE, files.size()))).forEach(this::add);
+            } finally {
+                // Finish the batches already listed, even if the listing failed; once cancelled, only those sent
+                if (!Thread.currentThread().isInterrupted()) {
+                    if (!pending.isEmpty() && !ctx.isCancelled())
+                        flush();
+                    while (inFlight > 0)
+                        next();
+                }
+            }
+
+            log.info("[BulkDeleteEngine] Deleted {} objects ({} bytes) from {} selected keys, {} failed", succeeded,
+                    bytes, selection.size(), failed);
+            return BulkOperationResult.builder()
+                    .succeeded(succeeded)
+                    .failed(failed)
+                    .bytes(bytes)
+                    .failures(failures)
+                    .build();
+        }
+
+        private void add(S3Object obj) {
+            ctx.checkCancelled();
+            if (!filter.test(obj))
+                return;
+            ctx.expect(1, obj.size() != null ? obj.size() : 0);
+            pending.add(obj);
+            if (pending.size() >= BATCH_SIZE)
+                flush();
+        }
+
+        /**
+         * Sizes of the selected files, which the listener needs, looked up in
+         * parallel. Files that no longer exist are left out.
+         */
+        private List<S3Object> headAll(List<String> keys) {
+            List<CompletableFuture<S3Object>> heads = keys.stream()
+                    .map(key -> CompletableFuture.supplyAsync(() -> S3Objects.head(s3Client, bucketName, key), ioExecutor))
+                    .collect(Collectors.toList());
+            List<S3Object> found = new ArrayList<>();
+            for (int i = 0; i < heads.size(); i++) {
+                try {
+                    S3Object obj = heads.get(i).join();
+                    if (obj != null)
+                        found.add(obj);
+                } catch (CompletionException e) {
+                    fail(keys.get(i), S3Objects.failureMessage(e));
+                }
+            }
+            return found;
+        }
+
+        private void flush() {
+            while (inFlight >= concurrency)
+                next();
+            Runnable ready;
+            while ((ready = events.poll()) != null)
+                ready.run();
+
+            List<S3Object> batch = new ArrayList<>(pending);
+            pending.clear();
+            List<ObjectIdentifier> ids = batch.stream()
+                    .map(obj -> ObjectIdentifier.builder().key(obj.key()).build())
+                    .collect(Collectors.toList());
+
+            inFlight++;
+            CompletableFuture.supplyAsync(() -> s3Client.deleteObjects(DeleteObjectsRequest.builder()
+                    .bucket(bucketName)
+                    .delete(Delete.builder().objects(ids).quiet(true).build())
+                    .build()), ioExecutor)
+                    .whenComplete((res, e) -> events.add(() -> deleted(batch, res, e)));
+        }
+
+        private void deleted(List<S3Object> batch, DeleteObjectsResponse res, Throwable error) {
+            inFlight--;
+            Map<String, String> errors = new HashMap<>();
+            if (res != null && res.hasErrors()) {
+                for (S3Error err : res.errors())
+                    errors.put(err.key(), err.message());
+            }
+            for (S3Object obj : batch) {
+                String reason = error != null ? S3Objects.failureMessage(error) : errors.get(obj.key());
+                long size = obj.size() != null ? obj.size() : 0;
+                if (reason != null) {
+                    fail(obj.key(), reason);
+                    ctx.advance(1, 0);
+                } else {
+                    listener.deleted(obj);
+                    succeeded++;
+                    bytes += size;
+                    ctx.advance(1, size);
+                }
+            }
+        }
+
+        private void fail(String key, String reason) {
+            failed++;
+            if (failures.size() < MAX_REPORTED_FAILURES)
+                failures.put(key, reason);
+            log.warn("[BulkDeleteEngine] {}: {}", key, reason);
+        }
+
+        private void next() {
+            try {
+                events.take().run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while deleting objects", e);
+            }
+        }
+    }
+}
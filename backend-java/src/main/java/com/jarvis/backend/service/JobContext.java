@@ -0,0 +1,83 @@
+package com.jarvis.backend.service;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress and cancellation for one long-running operation. Operations
+ * report what they have processed and stop at the next convenient point
+ * once cancelled. Synchronous callers pass {@link #none()}.
+ */
+public class JobContext {
+
+    private final AtomicLong totalObjects = new AtomicLong();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong processedObjects = new AtomicLong();
+    private final AtomicLong processedBytes = new AtomicLong();
+    private final Runnable onProgress;
+    private volatile boolean cancelled;
+
+    JobContext(Runnable onProgress) {
+        this.onProgress = onProgress;
+    }
+
+    /**
+     * A context for work that is not a job: never cancelled, progress is
+     * ignored.
+     */
+    public static JobContext none() {
+        return new JobContext(null);
+    }
+
+    public void setTotals(long objects, long bytes) {
+        totalObjects.set(objects);
+        totalBytes.set(bytes);
+    }
+
+    /**
+     * Adds to the totals, for work that finds what it has to do as it goes.
+     */
+    public void expect(long objects, long bytes) {
+        totalObjects.addAndGet(objects);
+        totalBytes.addAndGet(bytes);
+    }
+
+    public void advance(long objects, long bytes) {
+        processedObjects.addAndGet(objects);
+        processedBytes.addAndGet(bytes);
+        if (onProgress != null)
+            onProgress.run();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Throws CancellationException once the job has been cancelled.
+     */
+    public void checkCancelled() {
+        if (cancelled)
+            throw new CancellationException();
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    long totalObjects() {
+        return totalObjects.get();
+    }
+
+    long totalBytes() {
+        return totalBytes.get();
+    }
+
+    long processedObjects() {
+        return processedObjects.get();
+    }
+
+    long processedBytes() {
+        return processedBytes.get();
+    }
+}
@@ -0,0 +1,322 @@
+package com.jarvis.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jarvis.backend.dto.BulkOperationResult;
+import com.jarvis.backend.dto.JobStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Runs long operations (bulk deletes, trash and restore, moves, archive
+ * builds) in the background on the job pool, so the request that starts one
+ * returns a job ID at once and the client polls for progress.
+ *
+ * Every state change, and progress at most every couple of seconds, is
+ * appended to a local journal (app.jobs.journal-file). On startup the
+ * journal is replayed, so finished jobs keep their results across a restart
+ * and jobs that were running are reported as interrupted rather than lost.
+ * Finished jobs are forgotten after app.jobs.retention-hours.
+ */
+@Service
+@Slf4j
+public class JobService {
+
+    public static final String QUEUED = "QUEUED";
+    public static final String RUNNING = "RUNNING";
+    public static final String DONE = "DONE";
+    public static final String FAILED = "FAILED";
+    public static final String CANCELLED = "CANCELLED";
+
+    private static final long PROGRESS_JOURNAL_INTERVAL_MS = 2000;
+
+    private final ExecutorService jobExecutor;
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Object journalLock = new Object();
+    private final Path journal;
+    private BufferedWriter journalWriter;
+
+    @Value("${app.jobs.max-pending:100}")
+    private int maxPending;
+
+    @Value("${app.jobs.retention-hours:24}")
+    private long retentionHours;
+
+    public JobService(@Qualifier("jobExecutor") ExecutorService jobExecutor, ObjectMapper objectMapper,
+            @Value("${app.jobs.journal-file:data/jobs.jsonl}") String journalFile) {
+        this.jobExecutor = jobExecutor;
+        this.objectMapper = objectMapper;
+        this.journal = Paths.get(journalFile);
+        replay();
+    }
+
+    /**
+     * The work a job does. Whatever it returns becomes the job's result; a
+     * BulkOperationResult with failures marks the job FAILED.
+     */
+    @FunctionalInterface
+    public interface Work {
+        Object run(JobContext ctx) throws Exception;
+    }
+
+    private final class Job {
+        final JobContext ctx = new JobContext(this::progressed);
+        volatile JobStatus status;
+        volatile long lastJournaled;
+
+        Job(JobStatus status) {
+            this.status = status;
+        }
+
+        void progressed() {
+            long now = System.currentTimeMillis();
+            if (now - lastJournaled >= PROGRESS_JOURNAL_INTERVAL_MS) {
+                lastJournaled = now;
+                append(snapshot());
+            }
+        }
+
+        JobStatus snapshot() {
+            JobStatus s = status;
+            if (!RUNNING.equals(s.getState()))
+                return s;
+            return s.toBuilder()
+                    .totalObjects(ctx.totalObjects())
+                    .totalBytes(ctx.totalBytes())
+                    .processedObjects(ctx.processedObjects())
+                    .processedBytes(ctx.processedBytes())
+                    .build();
+        }
+    }
+
+    public JobStatus submit(String type, String target, Work work) {
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            throw new TaskRejectedException("Too many jobs queued, try again later");
+        }
+        Job job = new Job(JobStatus.builder()
+                .id(UUID.randomUUID().toString())
+                .type(type)
+                .target(target)
+                .state(QUEUED)
+                .createdAt(Instant.now().toString())
+                .build());
+        jobs.put(job.status.getId(), job);
+        append(job.status);
+        try {
+            jobExecutor.execute(() -> run(job, work));
+        } catch (RuntimeException e) {
+            pending.decrementAndGet();
+            finish(job, FAILED, "Could not be scheduled", null);
+            throw new TaskRejectedException("Could not schedule job", e);
+        }
+        log.info("[JobService] Queued {} of \"{}\" as job {}", type, target, job.status.getId());
+        return job.status;
+    }
+
+    /**
+     * Current state of a job, or null if unknown.
+     */
+    public JobStatus get(String id) {
+        Job job = jobs.get(id);
+        return job == null ? null : job.snapshot();
+    }
+
+    public List<JobStatus> list() {
+        return jobs.values().stream()
+                .map(Job::snapshot)
+                .sorted(Comparator.comparing(JobStatus::getCreatedAt).reversed())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Asks a job to stop. A queued job never starts; a running one stops at
+     * its next check and keeps what it has already done. Returns the status,
+     * or null if the job is unknown.
+     */
+    public JobStatus cancel(String id) {
+        Job job = jobs.get(id);
+        if (job == null)
+            return null;
+        job.ctx.cancel();
+        synchronized (job) {
+            if (QUEUED.equals(job.status.getState()))
+                finish(job, CANCELLED, null, null);
+        }
+        return job.snapshot();
+    }
+
+    private void run(Job job, Work work) {
+        try {
+            synchronized (job) {
+                if (!QUEUED.equals(job.status.getState()))
+                    return; // cancelled while queued
+                job.status = job.status.toBuilder().state(RUNNING).build();
+            }
+            append(job.status);
+            Object result = work.run(job.ctx);
+            if (result instanceof BulkOperationResult bulk && bulk.getFailed() > 0)
+                finish(job, FAILED, bulk.getFailed() + " objects failed", result);
+            else
+                finish(job, job.ctx.isCancelled() ? CANCELLED : DONE, null, result);
+        } catch (Exception e) {
+            if (e instanceof CancellationException || job.ctx.isCancelled()) {
+                // The work may have wrapped the cancellation on its way out
+                finish(job, CANCELLED, null, null);
+                return;
+            }
+            log.error("[JobService] Job {} failed", job.status.getId(), e);
+            finish(job, FAILED, e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName(), null);
+        } finally {
+            pending.decrementAndGet();
+        }
+    }
+
+    private void finish(Job job, String state, String error, Object result) {
+        JobStatus done = job.snapshot().toBuilder()
+                .state(state)
+                .totalObjects(job.ctx.totalObjects())
+                .totalBytes(job.ctx.totalBytes())
+                .processedObjects(job.ctx.processedObjects())
+                .processedBytes(job.ctx.processedBytes())
+                .error(error)
+                .result(result)
+                .finishedAt(Instant.now().toString())
+                .build();
+        job.status = done;
+        append(done);
+        log.info("[JobService] Job {} {} ({} objects, {} bytes)", done.getId(), state, done.getProcessedObjects(),
+                done.getProcessedBytes());
+    }
+
+    // --- Journal ---
+
+    private void append(JobStatus status) {
+        synchronized (journalLock) {
+            try {
+                if (journalWriter == null) {
+                    if (journal.getParent() != null)
+                        Files.createDirectories(journal.getParent());
+                    journalWriter = Files.newBufferedWriter(journal, StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                }
+                journalWriter.write(objectMapper.writeValueAsString(status));
+                journalWriter.newLine();
+                journalWriter.flush();
+            } catch (IOException e) {
+                // The job itself is unaffected; it just won't survive a restart
+                log.warn("[JobService] Failed to journal job {}: {}", status.getId(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Loads the last journaled state of every job, marks those that were
+     * still queued or running as interrupted, and compacts the journal to
+     * one line per job.
+     */
+    private void replay() {
+        if (!Files.exists(journal))
+            return;
+        Map<String, JobStatus> latest = new LinkedHashMap<>();
+        try {
+            for (String line : Files.readAllLines(journal, StandardCharsets.UTF_8)) {
+                if (line.isBlank())
+                    continue;
+                try {
+                    JobStatus status = objectMapper.readValue(line, JobStatus.class);
+                    latest.put(status.getId(), status);
+                } catch (IOException e) {
+                    log.warn("[JobService] Skipping unreadable journal line");
+                }
+            }
+        } catch (IOException e) {
+            log.warn("[JobService] Failed to read job journal {}: {}", journal, e.getMessage());
+            return;
+        }
+
+        int interrupted = 0;
+        for (JobStatus status : latest.values()) {
+            if (QUEUED.equals(status.getState()) || RUNNING.equals(status.getState())) {
+                status = status.toBuilder()
+                        .state(FAILED)
+                        .error("Interrupted by a restart")
+                        .finishedAt(Instant.now().toString())
+                        .build();
+                interrupted++;
+            }
+            jobs.put(status.getId(), new Job(status));
+        }
+        compact();
+        log.info("[JobService] Restored {} jobs from {} ({} interrupted)", jobs.size(), journal, interrupted);
+    }
+
+    /**
+     * Rewrites the journal with the current state of each known job.
+     */
+    private void compact() {
+        synchronized (journalLock) {
+            Path tmp = journal.resolveSibling(journal.getFileName() + ".tmp");
+            try {
+                if (journalWriter != null) {
+                    journalWriter.close();
+                    journalWriter = null;
+                }
+                try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                    for (Job job : jobs.values()) {
+                        out.write(objectMapper.writeValueAsString(job.snapshot()));
+                        out.newLine();
+                    }
+                }
+                Files.move(tmp, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                log.warn("[JobService] Failed to compact job journal {}: {}", journal, e.getMessage());
+            }
+        }
+    }
+
+    // --- Retention ---
+
+    @Scheduled(fixedDelayString = "${app.jobs.purge-interval-ms:3600000}",
+            initialDelayString = "${app.jobs.purge-interval-ms:3600000}")
+    public void purgeFinished() {
+        Instant cutoff = Instant.now().minus(Duration.ofHours(retentionHours));
+        List<String> forgotten = jobs.values().stream()
+                .map(job -> job.status)
+                .filter(s -> s.getFinishedAt() != null && Instant.parse(s.getFinishedAt()).isBefore(cutoff))
+                .map(JobStatus::getId)
+                .collect(Collectors.toList());
+        if (forgotten.isEmpty())
+            return;
+        forgotten.forEach(jobs::remove);
+        compact();
+        log.info("[JobService] Forgot {} finished jobs", forgotten.size());
+    }
+}
@@ -0,0 +1,65 @@
+package com.jarvis.backend.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * A user's selection of files and folders (keys ending in "/"), as sent by
+ * multi-select actions like archive download and bulk delete.
+ */
+public final class KeySelection {
+
+    private KeySelection() {
+    }
+
+    /**
+     * Sorted, without duplicates, and without anything inside another
+     * selected folder.
+     */
+    public static List<String> normalize(Collection<String> keys) {
+        TreeSet<String> sorted = new TreeSet<>(BucketKeyIndex.KEY_ORDER);
+        for (String key : keys) {
+            if (key == null)
+                continue;
+            String k = key.startsWith("/") ? key.substring(1) : key;
+            if (!k.isEmpty() && !k.startsWith(".metadata/"))
+                sorted.add(k);
+        }
+        // Everything under a folder sorts right after it, so only the last
+        // selected folder can contain the current key
+        List<String> selection = new ArrayList<>();
+        String folder = null;
+        for (String key : sorted) {
+            if (folder != null && key.startsWith(folder))
+                continue;
+            selection.add(key);
+            if (key.endsWith("/"))
+                folder = key;
+        }
+        return selection;
+    }
+
+    /**
+     * The deepest folder holding every selected key, "" for the bucket root.
+     * A selected folder counts as an entry of its parent.
+     */
+    public static String commonParent(List<String> selection) {
+        String common = null;
+        for (String key : selection) {
+            String trimmed = key.endsWith("/") ? key.substring(0, key.length() - 1) : key;
+            String parent = trimmed.substring(0, trimmed.lastIndexOf('/') + 1);
+            if (common == null) {
+                common = parent;
+            } else {
+                int i = 0;
+                int max = Math.min(common.length(), parent.length());
+                while (i < max && common.charAt(i) == parent.charAt(i))
+                    i++;
+                common = common.substring(0, common.lastIndexOf('/', i - 1) + 1);
+            }
+        }
+        return common == null ? "" : common;
+    }
+}
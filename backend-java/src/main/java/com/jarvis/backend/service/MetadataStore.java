@@ -0,0 +1,271 @@
+package com.jarvis.backend.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Key/value metadata (sharing, short links, stars) stored as many small JSON
+ * shards under .metadata/&lt;collection&gt;/ instead of one document per map.
+ *
+ * A write reads only the shard that owns the key and puts it back with
+ * If-Match on the ETag it read (If-None-Match: * for a new shard), retrying
+ * on conflict. Concurrent writers, including other replicas, therefore never
+ * overwrite each other's changes.
+ *
+ * Decoded shards are kept by ETag, so reloading a collection costs one LIST
+ * plus a GET for each shard that changed since the last load.
+ */
+@Component
+@Slf4j
+public class MetadataStore {
+
+    private static final String ROOT = ".metadata/";
+
+    // Fixed: changing it would move keys to different shards
+    private static final int SHARD_COUNT = 64;
+    private static final int MAX_ATTEMPTS = 8;
+
+    private final S3Client s3Client;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService ioExecutor;
+
+    // collection -> shard key -> last shard read, for skipping unchanged shards
+    private final Map<String, Map<String, Shard<?>>> loaded = new ConcurrentHashMap<>();
+
+    @Value("${aws.s3.bucket-name}")
+    private String bucketName;
+
+    public MetadataStore(S3Client s3Client, ObjectMapper objectMapper,
+            @Qualifier("s3IoExecutor") ExecutorService ioExecutor) {
+        this.s3Client = s3Client;
+        this.objectMapper = objectMapper;
+        this.ioExecutor = ioExecutor;
+    }
+
+    private static class Shard<V> {
+        final Map<String, V> data;
+        final String eTag; // null if the shard does not exist yet
+        final Instant readAt; // S3's clock when it was read
+
+        Shard(Map<String, V> data, String eTag, Instant readAt) {
+            this.data = data;
+            this.eTag = eTag;
+            this.readAt = readAt;
+        }
+    }
+
+    /**
+     * Reads every shard of a collection in parallel and merges them. Returns
+     * null if the collection has never been written, so callers can fall back
+     * to (and import) the legacy single-file format.
+     */
+    @SuppressWarnings("unchecked")
+    public <V> Map<String, V> loadAll(String collection, TypeReference<Map<String, V>> type) {
+        Map<String, String> eTags = new HashMap<>();
+        String continuationToken = null;
+        do {
+            ListObjectsV2Response res = s3Client.listObjectsV2(ListObjectsV2Request.builder()
+                    .bucket(bucketName)
+                    .prefix(ROOT + collection + "/")
+                    .continuationToken(continuationToken)
+                    .build());
+            res.contents().forEach(o -> eTags.put(o.key(), o.eTag()));
+            continuationToken = Boolean.TRUE.equals(res.isTruncated()) ? res.nextContinuationToken() : null;
+        } while (continuationToken != null);
+
+        Map<String, Shard<?>> cached = loaded.computeIfAbsent(collection, c -> new ConcurrentHashMap<>());
+        cached.keySet().retainAll(eTags.keySet());
+        if (eTags.isEmpty())
+            return null;
+
+        List<CompletableFuture<Map<String, V>>> reads = eTags.entrySet().stream()
+                .map(e -> {
+                    Shard<V> shard = (Shard<V>) cached.get(e.getKey());
+                    if (shard != null && shard.eTag != null && shard.eTag.equals(e.getValue()))
+                        return CompletableFuture.completedFuture(shard.data);
+                    return CompletableFuture.supplyAsync(() -> {
+                        Shard<V> read = readShard(e.getKey(), type);
+                        cached.put(e.getKey(), read);
+                        return read.data;
+                    }, ioExecutor);
+                })
+                .collect(Collectors.toList());
+
+        Map<String, V> all = new HashMap<>();
+        reads.forEach(r -> all.putAll(r.join()));
+        return all;
+    }
+
+    /**
+     * Current value of a single key, or null, read from its shard.
+     */
+    public <V> V get(String collection, String key, TypeReference<Map<String, V>> type) {
+        return readShard(shardKey(collection, key), type).data.get(key);
+    }
+
+    /**
+     * Applies a change to a single key and returns its new value. The mutator
+     * receives the current value (or null) and returns the new value, or null
+     * to remove the key. It may run more than once if the write conflicts.
+     */
+    public <V> V update(String collection, String key, TypeReference<Map<String, V>> type,
+            UnaryOperator<V> mutator) {
+        return update(collection, key, type, (current, now) -> mutator.apply(current));
+    }
+
+    /**
+     * Like update, but the mutator is also given S3's clock at the time the
+     * shard was read (whole seconds), for values that are later compared with
+     * object LastModified times.
+     */
+    public <V> V update(String collection, String key, TypeReference<Map<String, V>> type,
+            BiFunction<V, Instant, V> mutator) {
+        AtomicReference<V> result = new AtomicReference<>();
+        modifyShard(shardKey(collection, key), type, (data, now) -> {
+            V updated = mutator.apply(data.get(key), now);
+            if (updated == null)
+                data.remove(key);
+            else
+                data.put(key, updated);
+            result.set(updated);
+        });
+        return result.get();
+    }
+
+    /**
+     * One-time import of a legacy monolithic map. Entries already present in
+     * a shard win, so an import racing with normal writes loses nothing.
+     */
+    public <V> void importLegacy(String collection, Map<String, V> legacy, TypeReference<Map<String, V>> type) {
+        Map<String, Map<String, V>> byShard = new HashMap<>();
+        legacy.forEach((k, v) -> byShard.computeIfAbsent(shardKey(collection, k), s -> new HashMap<>()).put(k, v));
+
+        List<CompletableFuture<Void>> writes = byShard.entrySet().stream()
+                .map(e -> CompletableFuture.runAsync(
+                        () -> modifyShard(e.getKey(), type,
+                                (data, now) -> e.getValue().forEach(data::putIfAbsent)),
+                        ioExecutor))
+                .collect(Collectors.toList());
+        writes.forEach(CompletableFuture::join);
+        log.info("[MetadataStore] Imported {} legacy entries into {} shards of {}", legacy.size(), byShard.size(),
+                collection);
+    }
+
+    private String shardKey(String collection, String key) {
+        int shard = Math.floorMod(key.hashCode(), SHARD_COUNT);
+        return String.format("%s%s/shard-%02x.json", ROOT, collection, shard);
+    }
+
+    private <V> void modifyShard(String shardKey, TypeReference<Map<String, V>> type,
+            BiConsumer<Map<String, V>, Instant> change) {
+        for (int attempt = 1;; attempt++) {
+            Shard<V> shard = readShard(shardKey, type);
+            change.accept(shard.data, shard.readAt);
+            try {
+                writeShard(shardKey, shard);
+                return;
+            } catch (S3Exception e) {
+                if (!isConflict(e) || attempt >= MAX_ATTEMPTS)
+                    throw e;
+                log.info("[MetadataStore] Concurrent update of {}, retrying (attempt {})", shardKey, attempt);
+                backoff(attempt);
+            }
+        }
+    }
+
+    private <V> Shard<V> readShard(String shardKey, TypeReference<Map<String, V>> type) {
+        try {
+            ResponseBytes<GetObjectResponse> bytes = s3Client.getObjectAsBytes(GetObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(shardKey)
+                    .build());
+            byte[] json = bytes.asByteArray();
+            Map<String, V> data = json.length == 0 ? new HashMap<>() : objectMapper.readValue(json, type);
+            return new Shard<>(new HashMap<>(data), bytes.response().eTag(),
+                    serverTime(bytes.response().sdkHttpResponse()));
+        } catch (NoSuchKeyException e) {
+            return new Shard<>(new HashMap<>(), null,
+                    serverTime(e.awsErrorDetails() != null ? e.awsErrorDetails().sdkHttpResponse() : null));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read metadata shard " + shardKey, e);
+        }
+    }
+
+    private <V> void writeShard(String shardKey, Shard<V> shard) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(shard.data);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to serialize metadata shard " + shardKey, e);
+        }
+
+        AwsRequestOverrideConfiguration condition = AwsRequestOverrideConfiguration.builder()
+                .putHeader(shard.eTag != null ? "If-Match" : "If-None-Match", shard.eTag != null ? shard.eTag : "*")
+                .build();
+
+        s3Client.putObject(PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(shardKey)
+                .contentType("application/json")
+                .overrideConfiguration(condition)
+                .build(), RequestBody.fromBytes(json));
+    }
+
+    /**
+     * S3's clock from a response's Date header, so that it can be compared
+     * with LastModified without this server's clock skew. Falls back to the
+     * local clock if the header is missing.
+     */
+    private static Instant serverTime(SdkHttpResponse response) {
+        Optional<String> date = response != null ? response.firstMatchingHeader("Date") : Optional.empty();
+        if (date.isPresent()) {
+            try {
+                return Instant.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(date.get()));
+            } catch (DateTimeException e) {
+                log.debug("[MetadataStore] Unparseable Date header: {}", date.get());
+            }
+        }
+        return Instant.now().truncatedTo(ChronoUnit.SECONDS);
+    }
+
+    private boolean isConflict(S3Exception e) {
+        // 412: ETag changed since we read it, 409: concurrent conditional write in flight
+        return e.statusCode() == 412 || e.statusCode() == 409;
+    }
+
+    private void backoff(int attempt) {
+        long delay = Math.min(1000, 25L << attempt) + ThreadLocalRandom.current().nextLong(25);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while retrying metadata update", e);
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package com.jarvis.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Fetches the objects of an archive ahead of the writer so that S3
+ * first-byte latency overlaps with writing earlier entries.
+ *
+ * Up to app.zip.prefetch-objects objects are in flight per pipeline. Objects
+ * that fit in the remaining app.zip.prefetch-memory-mb budget are read into
+ * memory; the rest are spilled to a temporary file. Objects above the
+ * transfer threshold are not prefetched but streamed with parallel ranged
+ * GETs when their turn comes. Fetched objects then go through the
+ * pipeline's preparer (e.g. compression) on the CPU pool, so several
+ * entries are prepared at once. Entries are always handed to the writer in
+ * the order they were added.
+ */
+@Component
+@Slf4j
+public class ObjectPrefetcher {
+
+    private final S3Client s3Client;
+    private final TransferEngine transferEngine;
+    private final ExecutorService ioExecutor;
+    private final ExecutorService cpuExecutor;
+
+    @Value("${aws.s3.bucket-name}")
+    private String bucketName;
+
+    @Value("${app.zip.prefetch-objects:16}")
+    private int prefetchObjects;
+
+    @Value("${app.zip.prefetch-memory-mb:64}")
+    private long prefetchMemoryMb;
+
+    public ObjectPrefetcher(S3Client s3Client, TransferEngine transferEngine,
+            @Qualifier("s3IoExecutor") ExecutorService ioExecutor,
+            @Qualifier("cpuExecutor") ExecutorService cpuExecutor) {
+        this.s3Client = s3Client;
+        this.transferEngine = transferEngine;
+        this.ioExecutor = ioExecutor;
+        this.cpuExecutor = cpuExecutor;
+    }
+
+    /**
+     * Turns an object's content into what the writer needs. Runs on the CPU
+     * pool for prefetched content and on the writing thread for deferred
+     * content. Takes ownership of the content: it must be closed or handed
+     * on inside the result.
+     */
+    public interface Preparer<T extends Closeable> {
+        T prepare(S3Object obj, Content content) throws IOException;
+    }
+
+    /**
+     * Receives each prepared entry, in order, on the thread driving the
+     * pipeline. The entry is closed afterwards.
+     */
+    public interface EntryWriter<T> {
+        void write(S3Object obj, T prepared) throws IOException;
+    }
+
+    public <T extends Closeable> Pipeline<T> pipeline(Preparer<T> preparer, EntryWriter<T> writer) {
+        return new Pipeline<>(preparer, writer);
+    }
+
+    /**
+     * An object's bytes: in memory, in a spill file, or deferred until
+     * opened. Closing deletes the spill file.
+     */
+    public static final class Content implements Closeable {
+        private final byte[] data;
+        private final Path file;
+        private final long length;
+        private final TransferEngine source; // set when deferred
+        private final String key;
+
+        private Content(byte[] data, Path file, long length, TransferEngine source, String key) {
+            this.data = data;
+            this.file = file;
+            this.length = length;
+            this.source = source;
+            this.key = key;
+        }
+
+        public static Content of(byte[] data) {
+            return new Content(data, null, data.length, null, null);
+        }
+
+        public static Content of(Path file) throws IOException {
+            return new Content(null, file, Files.size(file), null, null);
+        }
+
+        public boolean isDeferred() {
+            return source != null;
+        }
+
+        public long length() {
+            return length;
+        }
+
+        /**
+         * The bytes when held in memory, otherwise null.
+         */
+        public byte[] data() {
+            return data;
+        }
+
+        public InputStream open() throws IOException {
+            if (data != null)
+                return new ByteArrayInputStream(data);
+            if (file != null)
+                return Files.newInputStream(file);
+            return source.download(key, length);
+        }
+
+        @Override
+        public void close() {
+            deleteQuietly(file);
+        }
+    }
+
+    private static final class Slot<T> {
+        final S3Object obj;
+        final long reserved; // bytes of the memory budget held
+        final CompletableFuture<T> prepared;
+
+        Slot(S3Object obj, long reserved, CompletableFuture<T> prepared) {
+            this.obj = obj;
+            this.reserved = reserved;
+            this.prepared = prepared;
+        }
+    }
+
+    /**
+     * One archive's worth of prefetching. Not thread-safe: add, finish and
+     * close are called from the thread writing the archive.
+     */
+    public final class Pipeline<T extends Closeable> implements Closeable {
+        private final Preparer<T> preparer;
+        private final EntryWriter<T> writer;
+        private final Deque<Slot<T>> window = new ArrayDeque<>();
+        private long budget = prefetchMemoryMb * 1024 * 1024;
+        private volatile boolean cancelled;
+
+        private Pipeline(Preparer<T> preparer, EntryWriter<T> writer) {
+            this.preparer = preparer;
+            this.writer = writer;
+        }
+
+        /**
+         * Queues an object, first writing out whatever is ready at the head
+         * of the window and waiting for the head while the window is full.
+         */
+        public void add(S3Object obj) throws IOException {
+            while (!window.isEmpty() && window.peekFirst().prepared.isDone())
+                writeHead();
+            while (window.size() >= prefetchObjects)
+                writeHead();
+            window.addLast(start(obj));
+        }
+
+        /**
+         * Writes every queued object.
+         */
+        public void finish() throws IOException {
+            while (!window.isEmpty())
+                writeHead();
+        }
+
+        /**
+         * Drops anything not yet written: fetches that have not started are
+         * skipped, running spills are aborted, and spill files are released
+         * once their fetches settle.
+         */
+        @Override
+        public void close() {
+            cancelled = true;
+            for (Slot<T> slot : window)
+                slot.prepared.thenAccept(ObjectPrefetcher::closeQuietly);
+            window.clear();
+        }
+
+        private Slot<T> start(S3Object obj) {
+            long size = obj.size() != null ? obj.size() : 0;
+            if (transferEngine.isLarge(size)) {
+                Content deferred = new Content(null, null, size, transferEngine, obj.key());
+                return new Slot<>(obj, 0, CompletableFuture.completedFuture(deferred)
+                        .thenApply(c -> prepare(obj, c)));
+            }
+
+            CompletableFuture<Content> fetch;
+            long reserved = 0;
+            if (size <= budget) {
+                reserved = size;
+                budget -= size;
+                fetch = CompletableFuture.supplyAsync(() -> fetchToMemory(obj), ioExecutor);
+            } else {
+                fetch = CompletableFuture.supplyAsync(() -> fetchToDisk(obj), ioExecutor);
+            }
+            return new Slot<>(obj, reserved, fetch.thenApplyAsync(c -> prepare(obj, c), cpuExecutor));
+        }
+
+        private T prepare(S3Object obj, Content content) {
+            if (cancelled) {
+                content.close();
+                throw new CancellationException();
+            }
+            try {
+                return preparer.prepare(obj, content);
+            } catch (IOException e) {
+                content.close();
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException e) {
+                content.close();
+                throw e;
+            }
+        }
+
+        private void writeHead() throws IOException {
+            Slot<T> slot = window.pollFirst();
+            try {
+                T prepared;
+                try {
+                    prepared = slot.prepared.join();
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof UncheckedIOException)
+                        throw ((UncheckedIOException) e.getCause()).getCause();
+                    if (e.getCause() instanceof RuntimeException)
+                        throw (RuntimeException) e.getCause();
+                    throw e;
+                }
+
+                try {
+                    writer.write(slot.obj, prepared);
+                } finally {
+                    prepared.close();
+                }
+            } finally {
+                budget += slot.reserved;
+            }
+        }
+
+        private Content fetchToMemory(S3Object obj) {
+            if (cancelled)
+                throw new CancellationException();
+            return Content.of(s3Client.getObjectAsBytes(request(obj)).asByteArray());
+        }
+
+        private Content fetchToDisk(S3Object obj) {
+            if (cancelled)
+                throw new CancellationException();
+            Path file;
+            try {
+                file = Files.createTempFile("prefetch-", ".tmp");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            try (ResponseInputStream<GetObjectResponse> in = s3Client.getObject(request(obj));
+                    OutputStream out = Files.newOutputStream(file)) {
+                byte[] buffer = new byte[64 * 1024];
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    if (cancelled) {
+                        in.abort(); // don't drain the rest of the object
+                        throw new CancellationException();
+                    }
+                    out.write(buffer, 0, n);
+                }
+            } catch (IOException e) {
+                deleteQuietly(file);
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException e) {
+                deleteQuietly(file);
+                throw e;
+            }
+            try {
+                return Content.of(file);
+            } catch (IOException e) {
+                deleteQuietly(file);
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private GetObjectRequest request(S3Object obj) {
+        return GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(obj.key())
+                .build();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            log.warn("[ObjectPrefetcher] Could not release prefetched entry", e);
+        }
+    }
+
+    static void deleteQuietly(Path file) {
+        if (file == null)
+            return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("[ObjectPrefetcher] Could not delete spill file {}", file, e);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.jarvis.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Reuses presigned GET URLs until app.presign.reuse-margin-minutes before
+ * they expire, so repeated previews of the same file skip the SigV4 work and
+ * the browser sees a stable URL it can serve from its own cache.
+ *
+ * Kept apart from RefreshingCache: a single listing page can add a thousand
+ * entries, which would otherwise push listings out of its LRU.
+ */
+@Component
+public class PresignedUrlCache {
+
+    public static final Duration SIGNATURE_DURATION = Duration.ofMinutes(60);
+
+    private final long reuseMillis;
+    private final Map<String, Signed> entries;
+
+    public PresignedUrlCache(@Value("${app.presign.cache-max-entries:20000}") int maxEntries,
+            @Value("${app.presign.reuse-margin-minutes:10}") long marginMinutes) {
+        this.reuseMillis = SIGNATURE_DURATION.minusMinutes(marginMinutes).toMillis();
+        this.entries = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Signed> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    private static class Signed {
+        final String url;
+        final long reusableUntil;
+
+        Signed(String url, long reusableUntil) {
+            this.url = url;
+            this.reusableUntil = reusableUntil;
+        }
+    }
+
+    /**
+     * Cached URL for key, or a fresh one from signer. Signing happens outside
+     * the lock; two racing misses both sign and the last one is kept.
+     */
+    public String get(String key, boolean download, Supplier<String> signer) {
+        String cacheKey = (download ? "d|" : "v|") + key;
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Signed signed = entries.get(cacheKey);
+            if (signed != null && now < signed.reusableUntil)
+                return signed.url;
+        }
+
+        String url = signer.get();
+        synchronized (entries) {
+            entries.put(cacheKey, new Signed(url, now + reuseMillis));
+        }
+        return url;
+    }
+}
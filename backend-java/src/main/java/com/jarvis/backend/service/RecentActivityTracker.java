@@ -0,0 +1,209 @@
+package com.jarvis.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * The most recently modified files across the whole bucket, kept in a
+ * bounded min-heap keyed by lastModified. Filled by the full reconciliation
+ * scan and then fed by every write the service makes, so "recent" is
+ * answered from memory and reflects the entire bucket rather than the first
+ * page of a lexical listing.
+ *
+ * Files that fell out of the heap are forgotten, so removals can leave it
+ * holding fewer than capacity files while older ones still exist. isShort()
+ * reports that, and only a rescan can refill it.
+ *
+ * Logically trashed files are set aside rather than forgotten, so trashing
+ * a busy folder does not leave the ranking padded with hidden files, and
+ * restoring it puts them back.
+ */
+@Component
+public class RecentActivityTracker {
+
+    private static final Comparator<S3Object> OLDEST_FIRST = Comparator
+            .comparing(S3Object::lastModified)
+            .thenComparing(S3Object::key);
+
+    private final int capacity;
+
+    private Ranking ranking;
+    private List<Runnable> pending; // writes seen while a scan is running
+    private volatile List<S3Object> newestFirst;
+    private final Map<String, List<S3Object>> trashed = new HashMap<>(); // trashed key -> files set aside
+
+    public RecentActivityTracker(@Value("${app.activity.capacity:200}") int capacity) {
+        this.capacity = capacity;
+    }
+
+    public synchronized boolean isSeeded() {
+        return ranking != null;
+    }
+
+    /**
+     * Whether removals have left the ranking below capacity although files
+     * it had to drop may still exist.
+     */
+    public synchronized boolean isShort() {
+        return ranking != null && ranking.dropped && ranking.heap.size() < capacity;
+    }
+
+    public synchronized void recordPut(String key, long size, Instant lastModified) {
+        S3Object obj = S3Object.builder().key(key).size(size).lastModified(lastModified).build();
+        if (pending != null)
+            pending.add(() -> ranking.offer(obj));
+        if (ranking != null && ranking.offer(obj))
+            newestFirst = null;
+    }
+
+    public synchronized void recordRemoval(String key) {
+        if (pending != null)
+            pending.add(() -> ranking.remove(key));
+        if (ranking != null && ranking.remove(key))
+            newestFirst = null;
+    }
+
+    /**
+     * Sets aside the files under a trashed key (a file, or a folder ending
+     * in "/").
+     */
+    public synchronized void recordTrash(String key) {
+        if (pending != null)
+            pending.add(() -> setAside(key));
+        setAside(key);
+    }
+
+    /**
+     * Puts back the files set aside when key was trashed.
+     */
+    public synchronized void recordRestore(String key) {
+        List<S3Object> restored = trashed.remove(key);
+        if (restored == null)
+            return;
+        for (S3Object obj : restored) {
+            if (pending != null)
+                pending.add(() -> ranking.offer(obj));
+            if (ranking != null && ranking.offer(obj))
+                newestFirst = null;
+        }
+    }
+
+    /**
+     * Drops what was set aside for a trashed key once it has been purged.
+     */
+    public synchronized void forgetTrashed(String key) {
+        trashed.remove(key);
+    }
+
+    private void setAside(String key) {
+        if (ranking == null)
+            return;
+        List<S3Object> covered = ranking.removeUnder(key);
+        if (covered.isEmpty())
+            return;
+        trashed.computeIfAbsent(key, k -> new ArrayList<>()).addAll(covered);
+        newestFirst = null;
+    }
+
+    /**
+     * Starts a rescan; writes from now on are replayed over its result.
+     */
+    public synchronized Ranking newRanking() {
+        pending = new ArrayList<>();
+        return new Ranking(capacity);
+    }
+
+    public synchronized void install(Ranking scanned) {
+        ranking = scanned;
+        if (pending != null)
+            pending.forEach(Runnable::run);
+        pending = null;
+        newestFirst = null;
+    }
+
+    public synchronized void abandon() {
+        pending = null;
+    }
+
+    /**
+     * Up to limit files, newest first.
+     */
+    public List<S3Object> getRecent(int limit) {
+        List<S3Object> sorted = newestFirst;
+        if (sorted == null) {
+            synchronized (this) {
+                if (ranking == null)
+                    return Collections.emptyList();
+                sorted = new ArrayList<>(ranking.byKey.values());
+                sorted.sort(OLDEST_FIRST.reversed());
+                sorted = Collections.unmodifiableList(sorted);
+                newestFirst = sorted;
+            }
+        }
+        return sorted.subList(0, Math.min(limit, sorted.size()));
+    }
+
+    /**
+     * Bounded top-K by lastModified. Not thread-safe on its own.
+     */
+    public static final class Ranking {
+        private final int capacity;
+        private final PriorityQueue<S3Object> heap = new PriorityQueue<>(OLDEST_FIRST);
+        private final Map<String, S3Object> byKey = new HashMap<>();
+        private boolean dropped; // some file did not fit
+
+        private Ranking(int capacity) {
+            this.capacity = capacity;
+        }
+
+        /**
+         * Returns true if the ranking changed.
+         */
+        public boolean offer(S3Object obj) {
+            if (obj.key().endsWith("/") || obj.key().startsWith(".metadata/") || obj.lastModified() == null)
+                return false;
+
+            boolean removed = remove(obj.key());
+            if (heap.size() < capacity) {
+                add(obj);
+                return true;
+            }
+            dropped = true;
+            if (OLDEST_FIRST.compare(obj, heap.peek()) > 0) {
+                byKey.remove(heap.poll().key());
+                add(obj);
+                return true;
+            }
+            return removed;
+        }
+
+        boolean remove(String key) {
+            S3Object existing = byKey.remove(key);
+            return existing != null && heap.remove(existing);
+        }
+
+        /**
+         * Removes key, or everything under it if it is a folder, and returns
+         * what was removed.
+         */
+        List<S3Object> removeUnder(String key) {
+            List<S3Object> removed = new ArrayList<>();
+            for (S3Object obj : byKey.values()) {
+                if (key.endsWith("/") ? obj.key().startsWith(key) : obj.key().equals(key))
+                    removed.add(obj);
+            }
+            for (S3Object obj : removed)
+                remove(obj.key());
+            return removed;
+        }
+
+        private void add(S3Object obj) {
+            heap.add(obj);
+            byKey.put(obj.key(), obj);
+        }
+    }
+}
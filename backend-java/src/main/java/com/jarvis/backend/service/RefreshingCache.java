@@ -0,0 +1,282 @@
+package com.jarvis.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * Loader-based cache for expensive S3-derived values.
+ *
+ * Concurrent misses for the same key share a single in-flight load. Once an
+ * entry is past its TTL it is still served for up to app.cache.max-stale-ms
+ * while one background refresh replaces it, so a burst of requests after
+ * expiry costs one reload rather than one per request. Invalidated entries
+ * are dropped outright and never served stale.
+ *
+ * Entries can be tagged with a kind and a key prefix. A mutation under a path
+ * then evicts only the entries of that kind whose prefix is an ancestor or a
+ * descendant of the path, instead of clearing the whole cache.
+ *
+ * Past app.cache.max-entries the least recently used entry is evicted, found
+ * through an access-ordered index rather than a scan of every entry.
+ */
+@Component
+@Slf4j
+public class RefreshingCache {
+
+    private final ExecutorService refreshExecutor;
+
+    @Value("${app.cache.max-entries:4096}")
+    private int maxEntries;
+
+    @Value("${app.cache.max-stale-ms:60000}")
+    private long maxStaleMillis;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // Cache keys, least recently used first; guarded by itself
+    private final LinkedHashMap<String, Boolean> recency = new LinkedHashMap<>(256, 0.75f, true);
+
+    // kind -> prefix -> cache keys, for scoped invalidation
+    private final Map<String, ConcurrentSkipListMap<String, Set<String>>> tagged = new ConcurrentHashMap<>();
+
+    public RefreshingCache(@Qualifier("cacheRefreshExecutor") ExecutorService refreshExecutor) {
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    private static class Loaded {
+        final Object value;
+        final long loadedAt;
+        final long ttlMillis;
+
+        Loaded(Object value, long ttlMillis) {
+            this.value = value;
+            this.loadedAt = System.currentTimeMillis();
+            this.ttlMillis = ttlMillis;
+        }
+    }
+
+    /**
+     * What an entry depends on: a kind of data and the key prefix it covers.
+     */
+    public static final class Tag {
+        final String kind;
+        final String prefix;
+
+        public Tag(String kind, String prefix) {
+            this.kind = kind;
+            this.prefix = prefix;
+        }
+    }
+
+    private static class Entry {
+        final Tag tag;
+        volatile Loaded loaded;
+        CompletableFuture<Object> inFlight; // guarded by this
+
+        Entry(Tag tag) {
+            this.tag = tag;
+        }
+    }
+
+    public <T> T get(String key, Duration ttl, Supplier<T> loader) {
+        return get(key, null, ttl, Duration.ofMillis(maxStaleMillis), loader);
+    }
+
+    public <T> T get(String key, Tag tag, Duration ttl, Supplier<T> loader) {
+        return get(key, tag, ttl, Duration.ofMillis(maxStaleMillis), loader);
+    }
+
+    /**
+     * Tagged lookup. maxStale bounds how long past its TTL the entry may be
+     * served while refreshing; zero disables stale serving for this entry.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Tag tag, Duration ttl, Duration maxStale, Supplier<T> loader) {
+        Entry entry = entries.computeIfAbsent(key, k -> register(k, new Entry(tag)));
+        touch(key);
+        long now = System.currentTimeMillis();
+
+        Loaded loaded = entry.loaded;
+        if (loaded != null) {
+            long age = now - loaded.loadedAt;
+            if (age < loaded.ttlMillis)
+                return (T) loaded.value;
+            if (age < loaded.ttlMillis + maxStale.toMillis()) {
+                refreshInBackground(key, entry, ttl, loader);
+                return (T) loaded.value;
+            }
+        }
+
+        CompletableFuture<Object> load;
+        boolean owner;
+        synchronized (entry) {
+            owner = entry.inFlight == null;
+            if (owner)
+                entry.inFlight = new CompletableFuture<>();
+            load = entry.inFlight;
+        }
+
+        if (owner)
+            return (T) runLoad(key, entry, ttl, loader, load);
+        return (T) await(load);
+    }
+
+    public void put(String key, Tag tag, Object value, Duration ttl) {
+        Entry entry = new Entry(tag);
+        entry.loaded = new Loaded(value, ttl.toMillis());
+        Entry previous = entries.put(key, entry);
+        if (previous != null)
+            unregister(key, previous);
+        register(key, entry);
+        touch(key);
+        evictIfNeeded();
+    }
+
+    public void invalidate(String key) {
+        Entry removed = entries.remove(key);
+        synchronized (recency) {
+            recency.remove(key);
+        }
+        if (removed != null)
+            unregister(key, removed);
+    }
+
+    public void invalidateAll() {
+        entries.keySet().forEach(this::invalidate);
+    }
+
+    /**
+     * Drops every entry of the given kind.
+     */
+    public void invalidateKind(String kind) {
+        ConcurrentSkipListMap<String, Set<String>> byPrefix = tagged.get(kind);
+        if (byPrefix != null)
+            byPrefix.values().forEach(keys -> keys.forEach(this::invalidate));
+    }
+
+    /**
+     * Drops entries of the given kind affected by a change at path: those
+     * whose prefix is an ancestor of the path (e.g. listings of its parent
+     * folders) or lies underneath it (e.g. listings inside a deleted folder).
+     */
+    public void invalidatePath(String kind, String path) {
+        ConcurrentSkipListMap<String, Set<String>> byPrefix = tagged.get(kind);
+        if (byPrefix == null)
+            return;
+
+        for (int i = 0; i < path.length(); i++) {
+            Set<String> keys = byPrefix.get(path.substring(0, i));
+            if (keys != null)
+                keys.forEach(this::invalidate);
+        }
+        for (Map.Entry<String, Set<String>> e : byPrefix.tailMap(path, true).entrySet()) {
+            if (!e.getKey().startsWith(path))
+                break;
+            e.getValue().forEach(this::invalidate);
+        }
+    }
+
+    private Entry register(String key, Entry entry) {
+        if (entry.tag != null) {
+            tagged.computeIfAbsent(entry.tag.kind, k -> new ConcurrentSkipListMap<>())
+                    .computeIfAbsent(entry.tag.prefix, p -> ConcurrentHashMap.newKeySet())
+                    .add(key);
+        }
+        return entry;
+    }
+
+    private void unregister(String key, Entry entry) {
+        // Leave the tag in place if the key has already been cached again
+        if (entry.tag == null || entries.containsKey(key))
+            return;
+        ConcurrentSkipListMap<String, Set<String>> byPrefix = tagged.get(entry.tag.kind);
+        if (byPrefix != null) {
+            byPrefix.computeIfPresent(entry.tag.prefix, (p, keys) -> {
+                keys.remove(key);
+                return keys.isEmpty() ? null : keys;
+            });
+        }
+    }
+
+    private void refreshInBackground(String key, Entry entry, Duration ttl, Supplier<?> loader) {
+        CompletableFuture<Object> load;
+        synchronized (entry) {
+            if (entry.inFlight != null)
+                return;
+            load = new CompletableFuture<>();
+            entry.inFlight = load;
+        }
+        refreshExecutor.execute(() -> {
+            try {
+                runLoad(key, entry, ttl, loader, load);
+            } catch (RuntimeException e) {
+                log.warn("[RefreshingCache] Background refresh of {} failed, keeping stale value", key, e);
+            }
+        });
+    }
+
+    private Object runLoad(String key, Entry entry, Duration ttl, Supplier<?> loader, CompletableFuture<Object> load) {
+        try {
+            Object value = loader.get();
+            // An entry invalidated mid-load is no longer mapped; don't resurrect it
+            if (entries.get(key) == entry) {
+                entry.loaded = new Loaded(value, ttl.toMillis());
+                evictIfNeeded();
+            }
+            load.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            synchronized (entry) {
+                entry.inFlight = null;
+            }
+        }
+    }
+
+    private Object await(CompletableFuture<Object> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw e;
+        }
+    }
+
+    private void touch(String key) {
+        synchronized (recency) {
+            recency.put(key, Boolean.TRUE);
+        }
+    }
+
+    private void evictIfNeeded() {
+        while (entries.size() > maxEntries) {
+            String eldest;
+            synchronized (recency) {
+                Iterator<String> it = recency.keySet().iterator();
+                if (!it.hasNext())
+                    return;
+                eldest = it.next();
+            }
+            invalidate(eldest);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.jarvis.backend.service;
+
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.util.concurrent.CompletionException;
+
+/**
+ * Helpers shared by the services that look up and report on individual
+ * objects.
+ */
+public final class S3Objects {
+
+    private S3Objects() {
+    }
+
+    /**
+     * The object as a listing would describe it, or null if it does not
+     * exist.
+     */
+    public static S3Object head(S3Client s3Client, String bucketName, String key) {
+        try {
+            HeadObjectResponse res = s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .build());
+            return S3Object.builder()
+                    .key(key)
+                    .size(res.contentLength())
+                    .lastModified(res.lastModified())
+                    .eTag(res.eTag())
+                    .build();
+        } catch (NoSuchKeyException e) {
+            return null;
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404)
+                return null;
+            throw e;
+        }
+    }
+
+    /**
+     * A one-line reason for a failed request, for per-key failure reports.
+     */
+    public static String failureMessage(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+}
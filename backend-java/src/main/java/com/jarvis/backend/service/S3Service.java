@@ -4,7 +4,9 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jarvis.backend.dto.*;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import software.amazon.awssdk.core.ResponseBytes;
 import software.amazon.awssdk.core.sync.RequestBody;
@@ -13,18 +15,26 @@ import software.amazon.awssdk.services.s3.model.*;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
 import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
+import software.amazon.awssdk.services.s3.presigner.model.UploadPartPresignRequest;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import java.io.OutputStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 @Service
 @Slf4j
@@ -33,6 +43,10 @@ public class S3Service {
     private final S3Client s3Client;
     private final S3Presigner s3Presigner;
     private final ObjectMapper objectMapper;
+    private final StorageUsageAggregator usageAggregator;
+    private final BucketKeyIndex keyIndex;
+    private final ExecutorService ioExecutor;
+    private final MetadataStore metadataStore;
 
     @Value("${aws.s3.bucket-name}")
     private String bucketName;
@@ -46,85 +60,490 @@ public class S3Service {
     @Value("${app.always-use-cloudfront:false}")
     private boolean alwaysUseCloudfront;
 
-    // Direct translation of Node.js simple memory cache
-    private static class CacheEntry {
-        Object data;
-        long timestamp;
-    }
-
-    private final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
-    private static final long TTL = 5000; // 5 seconds
-
-    public S3Service(S3Client s3Client, S3Presigner s3Presigner, ObjectMapper objectMapper) {
+    @Value("${app.index.enabled:false}")
+    private boolean keyIndexEnabled;
+
+    private final RefreshingCache cache;
+    private final RecentActivityTracker activityTracker;
+    private final BucketScanner bucketScanner;
+    private final StreamingUploader streamingUploader;
+    private final TransferEngine transferEngine;
+    private final PresignedUrlCache urlCache;
+    private final ArchiveBuilder archiveBuilder;
+    private final BulkCopyEngine copyEngine;
+    private final TombstoneStore tombstones;
+    private final BulkDeleteEngine deleteEngine;
+    private static final Duration METADATA_TTL = Duration.ofSeconds(5);
+    private static final int MAX_PART_NUMBER = 10000;
+    private static final int MAX_PART_URLS_PER_CALL = 1000;
+    private static final int MAX_BATCH_UPLOAD_URLS = 10000;
+    private static final long MAX_SINGLE_PUT_SIZE = 5L * 1024 * 1024 * 1024;
+    private static final Duration PUT_URL_DURATION = Duration.ofMinutes(60);
+    private static final String CACHE_LISTING = "listing";
+    private static final String CACHE_SHARING = "sharing";
+    private static final String CACHE_LINKS = "shareLinks";
+    private static final String CACHE_STARS = "stars";
+    private static final String CACHE_STARRED = "starredItems";
+
+    @Value("${app.cache.listing-ttl-ms:10000}")
+    private long listingTtlMillis;
+
+    @Value("${app.trash.retention-days:30}")
+    private long trashRetentionDays;
+
+    private static final TypeReference<Map<String, String>> STARS_TYPE = new TypeReference<>() {
+    };
+    private static final TypeReference<Map<String, SharingSettings>> SHARING_TYPE = new TypeReference<>() {
+    };
+    private static final TypeReference<Map<String, ShareLink>> LINKS_TYPE = new TypeReference<>() {
+    };
+
+    // Last star set loaded, so removals can cheaply tell whether the starred view changed
+    private volatile Set<String> starredKeys;
+
+    // Keys signed for a browser PUT and not yet confirmed -> when the URL expires
+    private final ConcurrentSkipListMap<String, Long> pendingUploads = new ConcurrentSkipListMap<>();
+
+    private final AtomicBoolean refillingActivity = new AtomicBoolean();
+
+    public S3Service(S3Client s3Client, S3Presigner s3Presigner, ObjectMapper objectMapper,
+            StorageUsageAggregator usageAggregator, BucketKeyIndex keyIndex,
+            @Qualifier("s3IoExecutor") ExecutorService ioExecutor, MetadataStore metadataStore,
+            RefreshingCache cache, RecentActivityTracker activityTracker, BucketScanner bucketScanner,
+            StreamingUploader streamingUploader, TransferEngine transferEngine, PresignedUrlCache urlCache,
+            ArchiveBuilder archiveBuilder, BulkCopyEngine copyEngine, TombstoneStore tombstones,
+            BulkDeleteEngine deleteEngine) {
         this.s3Client = s3Client;
         this.s3Presigner = s3Presigner;
         this.objectMapper = objectMapper;
+        this.usageAggregator = usageAggregator;
+        this.keyIndex = keyIndex;
+        this.ioExecutor = ioExecutor;
+        this.metadataStore = metadataStore;
+        this.cache = cache;
+        this.activityTracker = activityTracker;
+        this.bucketScanner = bucketScanner;
+        this.streamingUploader = streamingUploader;
+        this.transferEngine = transferEngine;
+        this.urlCache = urlCache;
+        this.archiveBuilder = archiveBuilder;
+        this.copyEngine = copyEngine;
+        this.tombstones = tombstones;
+        this.deleteEngine = deleteEngine;
+    }
+
+    /**
+     * Evicts what a change to one key can affect: listing pages of its parent
+     * prefixes (or of the prefix it roots). Sharing, short links and unrelated
+     * listings stay cached.
+     */
+    private void invalidateListings(String key) {
+        cache.invalidatePath(CACHE_LISTING, key);
     }
 
-    private void invalidateCache() {
-        cache.clear();
+    private boolean useKeyIndex() {
+        return keyIndexEnabled && keyIndex.isReady();
     }
 
-    private <T> T getFromCache(String key) {
-        CacheEntry entry = cache.get(key);
-        if (entry != null && (System.currentTimeMillis() - entry.timestamp < TTL)) {
-            return (T) entry.data;
+    /**
+     * Size of an existing object, or null if there is none. Used to turn
+     * overwrites and deletes into exact deltas for the usage aggregator.
+     */
+    private Long headSize(String key) {
+        if (useKeyIndex())
+            return keyIndex.sizeOf(key);
+        try {
+            return s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .build()).contentLength();
+        } catch (NoSuchKeyException e) {
+            return null;
         }
-        return null;
     }
 
-    private void putToCache(String key, Object data) {
-        CacheEntry entry = new CacheEntry();
-        entry.data = data;
-        entry.timestamp = System.currentTimeMillis();
-        cache.put(key, entry);
+    private void recordPut(String key, long size, Long previousSize) {
+        tombstones.noteWrite(key);
+        usageAggregator.recordPut(key, size, previousSize);
+        Instant now = Instant.now();
+        keyIndex.put(key, size, now);
+        activityTracker.recordPut(key, size, now);
+        invalidateListings(key);
     }
 
-    // --- Presigned URL ---
-    public PresignedUrlResponse generatePresignedUrl(String key, String contentType) {
-        PutObjectRequest objectRequest = PutObjectRequest.builder()
-                .bucket(bucketName)
+    private void recordRemoval(String key, long size) {
+        usageAggregator.recordRemoval(key, size);
+        keyIndex.remove(key);
+        activityTracker.recordRemoval(key);
+        invalidateListings(key);
+        Set<String> stars = starredKeys;
+        if (stars != null && stars.contains(key))
+            cache.invalidate(CACHE_STARRED);
+    }
+
+    private FileItem buildFileItem(String key, Long size, Instant lastModified) {
+        boolean isFolder = key.endsWith("/");
+        String[] parts = key.split("/");
+        String name = parts.length > 0 ? parts[parts.length - 1] : "";
+
+        String url = (!isFolder && cloudfrontDomain != null && !cloudfrontDomain.isEmpty())
+                ? "https://" + cloudfrontDomain + "/" + key
+                : null;
+
+        return FileItem.builder()
                 .key(key)
-                .contentType(contentType)
+                .name(name)
+                .size(size)
+                .lastModified(lastModified)
+                .isFolder(isFolder)
+                .url(url)
                 .build();
+    }
+
+    /**
+     * Resolves a set of keys to file items without listing the bucket: from the
+     * key index when it is available, otherwise with HeadObject calls fanned out
+     * over the I/O pool. Keys that no longer exist are dropped.
+     */
+    private List<FileItem> resolveItems(Collection<String> keys) {
+        List<FileItem> items = new ArrayList<>();
+        if (useKeyIndex()) {
+            for (String key : keys) {
+                S3Object obj = keyIndex.find(key);
+                if (obj != null && !tombstones.hides(key, obj.lastModified()))
+                    items.add(buildFileItem(key, obj.size(), obj.lastModified()));
+            }
+        } else {
+            List<CompletableFuture<FileItem>> lookups = keys.stream()
+                    .map(key -> CompletableFuture.supplyAsync(() -> {
+                        S3Object obj = S3Objects.head(s3Client, bucketName, key);
+                        return obj == null ? null : buildFileItem(key, obj.size(), obj.lastModified());
+                    }, ioExecutor))
+                    .collect(Collectors.toList());
+
+            for (CompletableFuture<FileItem> lookup : lookups) {
+                FileItem item = lookup.join();
+                if (item != null && !tombstones.hides(item.getKey(), item.getLastModified()))
+                    items.add(item);
+            }
+        }
+        items.sort(Comparator.comparing(FileItem::getKey, BucketKeyIndex.KEY_ORDER));
+        return items;
+    }
+
+    // --- Presigned URL ---
+    public PresignedUrlResponse generatePresignedUrl(String key, String contentType) {
+        PresignedUrlResponse res = presignPut(key, contentType);
+        // The browser uploads straight to S3, so drop listings it is about to change
+        tombstones.noteWrite(key);
+        notePending(List.of(key));
+        invalidateListings(key);
+        return res;
+    }
+
+    /**
+     * Presigns PUT URLs for a whole dropped folder in one call and creates the
+     * folder markers its files live under. Signing is CPU-bound and runs in
+     * parallel; marker writes fan out on the I/O pool.
+     */
+    public BatchUploadUrlResponse generatePresignedUrls(String prefix, List<BatchUploadUrlRequest.FileEntry> files) {
+        if (files == null || files.isEmpty())
+            return BatchUploadUrlResponse.builder().urls(List.of()).folders(List.of()).build();
+        if (files.size() > MAX_BATCH_UPLOAD_URLS)
+            throw new IllegalArgumentException("At most " + MAX_BATCH_UPLOAD_URLS + " files per request");
+
+        String base = prefix == null ? "" : prefix;
+        if (!base.isEmpty() && !base.endsWith("/"))
+            base += "/";
+
+        List<String> keys = new ArrayList<>(files.size());
+        for (BatchUploadUrlRequest.FileEntry file : files) {
+            String path = file.getRelativePath();
+            if (path == null || path.isEmpty() || path.endsWith("/"))
+                throw new IllegalArgumentException("Invalid relative path: " + path);
+            if (file.getSize() != null && file.getSize() > MAX_SINGLE_PUT_SIZE)
+                throw new IllegalArgumentException(path + " is too large for a single PUT, use a multipart upload");
+            keys.add(base + (path.startsWith("/") ? path.substring(1) : path));
+        }
+
+        List<PresignedUrlResponse> urls = IntStream.range(0, keys.size())
+                .parallel()
+                .mapToObj(i -> presignPut(keys.get(i), files.get(i).getContentType()))
+                .collect(Collectors.toList());
+
+        // Every intermediate folder between the prefix and each file
+        Set<String> folders = new TreeSet<>(BucketKeyIndex.KEY_ORDER);
+        for (String key : keys) {
+            for (int slash = key.indexOf('/', base.length()); slash >= 0; slash = key.indexOf('/', slash + 1))
+                folders.add(key.substring(0, slash + 1));
+        }
+        List<CompletableFuture<Void>> markers = folders.stream()
+                .filter(folder -> !useKeyIndex() || keyIndex.find(folder) == null)
+                .map(folder -> CompletableFuture.runAsync(() -> createFolder(folder), ioExecutor))
+                .collect(Collectors.toList());
+        markers.forEach(CompletableFuture::join);
+
+        // The browser uploads straight to S3, so drop listings it is about to change
+        keys.forEach(tombstones::noteWrite);
+        notePending(keys);
+        keys.forEach(this::invalidateListings);
+        return BatchUploadUrlResponse.builder().urls(urls).folders(new ArrayList<>(folders)).build();
+    }
 
+    /**
+     * Records uploads the browser finished through presigned PUT URLs, which
+     * never pass through this service, so the key index, usage and recent
+     * activity show them without waiting for the next reconcile. Each key is
+     * looked up in S3 and only objects that exist are recorded. Returns how
+     * many were.
+     */
+    public int confirmUploads(List<String> keys) {
+        if (keys == null || keys.isEmpty())
+            return 0;
+        if (keys.size() > MAX_BATCH_UPLOAD_URLS)
+            throw new IllegalArgumentException("At most " + MAX_BATCH_UPLOAD_URLS + " keys per request");
+
+        List<CompletableFuture<S3Object>> heads = keys.stream()
+                .map(key -> CompletableFuture.supplyAsync(() -> S3Objects.head(s3Client, bucketName, key), ioExecutor))
+                .collect(Collectors.toList());
+        int recorded = 0;
+        for (CompletableFuture<S3Object> head : heads) {
+            S3Object obj = head.join();
+            if (obj == null)
+                continue;
+            // Only the index knows what an overwritten object used to weigh
+            Long previousSize = useKeyIndex() ? keyIndex.sizeOf(obj.key()) : null;
+            recordPut(obj.key(), obj.size(), previousSize);
+            recorded++;
+        }
+        keys.forEach(pendingUploads::remove);
+        return recorded;
+    }
+
+    /**
+     * Remembers keys the browser is about to PUT, so their listings are read
+     * from S3 uncached until the uploads are confirmed or the URLs expire.
+     */
+    private void notePending(List<String> keys) {
+        long now = System.currentTimeMillis();
+        if (pendingUploads.size() > MAX_BATCH_UPLOAD_URLS)
+            pendingUploads.values().removeIf(expiry -> expiry <= now);
+        long expiry = now + PUT_URL_DURATION.toMillis();
+        keys.forEach(key -> pendingUploads.put(key, expiry));
+    }
+
+    private boolean hasPendingUploads(String prefix) {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Long> e : pendingUploads.tailMap(prefix).entrySet()) {
+            if (!e.getKey().startsWith(prefix))
+                return false;
+            if (e.getValue() > now)
+                return true;
+            pendingUploads.remove(e.getKey(), e.getValue());
+        }
+        return false;
+    }
+
+    private PresignedUrlResponse presignPut(String key, String contentType) {
         PutObjectPresignRequest presignRequest = PutObjectPresignRequest.builder()
-                .signatureDuration(Duration.ofMinutes(60))
-                .putObjectRequest(objectRequest)
+                .signatureDuration(PUT_URL_DURATION)
+                .putObjectRequest(PutObjectRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .contentType(contentType)
+                        .build())
                 .build();
-
         String url = s3Presigner.presignPutObject(presignRequest).url().toString();
         return PresignedUrlResponse.builder().url(url).key(key).build();
     }
 
     // --- Direct Upload ---
-    public UploadResponse uploadFile(String fileName, String contentType, byte[] content) {
-        PutObjectRequest putOb = PutObjectRequest.builder()
-                .bucket(bucketName)
+    /**
+     * Streams the content to S3 without buffering the whole file. Large
+     * uploads of known length go through the transfer manager in parallel
+     * parts; the rest use pooled part-sized chunks. contentLength is -1 when
+     * unknown.
+     */
+    public UploadResponse uploadFile(String fileName, String contentType, InputStream content, long contentLength) {
+        Long previousSize = headSize(fileName);
+        long size;
+        if (contentLength >= 0 && transferEngine.isLarge(contentLength)) {
+            transferEngine.upload(fileName, contentType, content, contentLength);
+            size = contentLength;
+        } else {
+            size = streamingUploader.upload(fileName, contentType, content);
+        }
+        recordPut(fileName, size, previousSize);
+
+        return UploadResponse.builder()
+                .success(true)
                 .key(fileName)
-                .contentType(contentType)
+                .location(locationOf(fileName))
                 .build();
+    }
+
+    private String locationOf(String key) {
+        return (cloudfrontDomain != null && !cloudfrontDomain.isEmpty())
+                ? "https://" + cloudfrontDomain + "/" + key
+                : "https://" + bucketName + ".s3." + region + ".amazonaws.com/" + key;
+    }
 
-        s3Client.putObject(putOb, RequestBody.fromBytes(content));
-        invalidateCache();
+    // --- Presigned Multipart Upload ---
+    // The browser sends parts straight to S3; the backend only signs and
+    // bookkeeps, so uploads can exceed 5 GB and resume after a failure.
+    public MultipartUploadResponse initiateMultipartUpload(String key, String contentType) {
+        String uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)
+                .build()).uploadId();
+        tombstones.noteWrite(key);
+        invalidateListings(key);
+        return MultipartUploadResponse.builder().key(key).uploadId(uploadId).parts(List.of()).build();
+    }
+
+    public MultipartUploadResponse presignUploadParts(String key, String uploadId, List<Integer> partNumbers) {
+        if (partNumbers == null || partNumbers.isEmpty())
+            throw new RuntimeException("No part numbers requested");
+        if (partNumbers.size() > MAX_PART_URLS_PER_CALL)
+            throw new RuntimeException("At most " + MAX_PART_URLS_PER_CALL + " part URLs per request");
 
-        String location = (cloudfrontDomain != null && !cloudfrontDomain.isEmpty())
-                ? "https://" + cloudfrontDomain + "/" + fileName
-                : "https://" + bucketName + ".s3." + region + ".amazonaws.com/" + fileName;
+        List<MultipartUploadResponse.Part> parts = new ArrayList<>(partNumbers.size());
+        for (Integer partNumber : partNumbers) {
+            if (partNumber == null || partNumber < 1 || partNumber > MAX_PART_NUMBER)
+                throw new RuntimeException("Invalid part number: " + partNumber);
+
+            UploadPartPresignRequest presignRequest = UploadPartPresignRequest.builder()
+                    .signatureDuration(Duration.ofMinutes(60))
+                    .uploadPartRequest(UploadPartRequest.builder()
+                            .bucket(bucketName)
+                            .key(key)
+                            .uploadId(uploadId)
+                            .partNumber(partNumber)
+                            .build())
+                    .build();
+            String url = s3Presigner.presignUploadPart(presignRequest).url().toString();
+            parts.add(MultipartUploadResponse.Part.builder().partNumber(partNumber).url(url).build());
+        }
+        return MultipartUploadResponse.builder().key(key).uploadId(uploadId).parts(parts).build();
+    }
+
+    /**
+     * Parts S3 already holds for an upload, so a client can resume by
+     * sending only the missing ones.
+     */
+    public MultipartUploadResponse listUploadedParts(String key, String uploadId) {
+        List<MultipartUploadResponse.Part> parts = new ArrayList<>();
+        Integer marker = null;
+        boolean isTruncated = true;
+
+        while (isTruncated) {
+            ListPartsResponse res = s3Client.listParts(ListPartsRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .partNumberMarker(marker)
+                    .build());
+
+            for (Part part : res.parts()) {
+                parts.add(MultipartUploadResponse.Part.builder()
+                        .partNumber(part.partNumber())
+                        .etag(part.eTag())
+                        .size(part.size())
+                        .build());
+            }
+            isTruncated = Boolean.TRUE.equals(res.isTruncated());
+            marker = res.nextPartNumberMarker();
+        }
+        return MultipartUploadResponse.builder().key(key).uploadId(uploadId).parts(parts).build();
+    }
+
+    public UploadResponse completeMultipartUpload(String key, String uploadId,
+            List<MultipartUploadResponse.Part> parts) {
+        if (parts == null || parts.isEmpty())
+            throw new RuntimeException("No parts to complete");
+
+        List<CompletedPart> completed = parts.stream()
+                .sorted(Comparator.comparing(MultipartUploadResponse.Part::getPartNumber))
+                .map(p -> CompletedPart.builder().partNumber(p.getPartNumber()).eTag(p.getEtag()).build())
+                .collect(Collectors.toList());
+
+        Long previousSize = headSize(key);
+        s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .uploadId(uploadId)
+                .multipartUpload(CompletedMultipartUpload.builder().parts(completed).build())
+                .build());
+
+        long size = s3Client.headObject(HeadObjectRequest.builder().bucket(bucketName).key(key).build())
+                .contentLength();
+        recordPut(key, size, previousSize);
 
         return UploadResponse.builder()
                 .success(true)
-                .key(fileName)
-                .location(location)
+                .key(key)
+                .location(locationOf(key))
                 .build();
     }
 
+    public void abortMultipartUpload(String key, String uploadId) {
+        s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .uploadId(uploadId)
+                .build());
+    }
+
     // --- Get File URL ---
     public String getFileUrl(String key, boolean isPublic, boolean download) {
         if (!download && (isPublic || alwaysUseCloudfront) && cloudfrontDomain != null && !cloudfrontDomain.isEmpty()) {
             return "https://" + cloudfrontDomain + "/" + key;
         }
+        return urlCache.get(key, download, () -> presignGet(key, download));
+    }
 
+    /**
+     * URLs for many keys at once, in the order given. Cache misses are signed
+     * in parallel.
+     */
+    public Map<String, String> getFileUrls(List<String> keys, boolean isPublic, boolean download) {
+        List<String> distinct = keys.stream().distinct().collect(Collectors.toList());
+        List<String> urls = distinct.parallelStream()
+                .map(key -> getFileUrl(key, isPublic, download))
+                .collect(Collectors.toList());
+
+        Map<String, String> result = new LinkedHashMap<>();
+        for (int i = 0; i < distinct.size(); i++)
+            result.put(distinct.get(i), urls.get(i));
+        return result;
+    }
+
+    /**
+     * Copy of a listing page with the view URL /file-url would return set on
+     * every file, so the UI needs no per-file URL requests. Items are copied
+     * because listing pages may be shared through the cache.
+     */
+    public FileListResponse withFileUrls(FileListResponse page) {
+        List<String> keys = page.getItems().stream()
+                .filter(item -> !Boolean.TRUE.equals(item.getIsFolder()))
+                .map(FileItem::getKey)
+                .collect(Collectors.toList());
+        Map<String, String> urls = getFileUrls(keys, false, false);
+
+        List<FileItem> items = page.getItems().stream()
+                .map(item -> urls.containsKey(item.getKey())
+                        ? item.toBuilder().url(urls.get(item.getKey())).build()
+                        : item)
+                .collect(Collectors.toList());
+        return FileListResponse.builder()
+                .items(items)
+                .nextContinuationToken(page.getNextContinuationToken())
+                .isTruncated(page.getIsTruncated())
+                .build();
+    }
+
+    private String presignGet(String key, boolean download) {
         GetObjectRequest.Builder getObjectBuilder = GetObjectRequest.builder()
                 .bucket(bucketName)
                 .key(key);
@@ -135,7 +554,7 @@ public class S3Service {
         }
 
         GetObjectPresignRequest presignRequest = GetObjectPresignRequest.builder()
-                .signatureDuration(Duration.ofMinutes(60))
+                .signatureDuration(PresignedUrlCache.SIGNATURE_DURATION)
                 .getObjectRequest(getObjectBuilder.build())
                 .build();
 
@@ -148,24 +567,48 @@ public class S3Service {
         // if recursive: Delimiter = undefined
         // if not recursive: Delimiter = "/"
 
-        ListObjectsV2Request.Builder requestBuilder = ListObjectsV2Request.builder()
-                .bucket(bucketName)
-                .prefix(prefix)
-                .maxKeys(limit)
-                .continuationToken(continuationToken);
+        log.info("[S3Service] Listing files - prefix: \"{}\", limit: {}, recursive: {}", prefix, limit, recursive);
+        ListObjectsV2Response response;
+        boolean uploading = hasPendingUploads(prefix);
+        if (!uploading && useKeyIndex()
+                && (continuationToken == null || BucketKeyIndex.isIndexToken(continuationToken))) {
+            response = keyIndex.list(prefix, recursive, limit, continuationToken);
+        } else {
+            ListObjectsV2Request.Builder requestBuilder = ListObjectsV2Request.builder()
+                    .bucket(bucketName)
+                    .prefix(prefix)
+                    .maxKeys(limit);
+
+            if (BucketKeyIndex.isIndexToken(continuationToken)) {
+                // Listing started on the index before it became unavailable
+                requestBuilder.startAfter(BucketKeyIndex.startAfterFromToken(continuationToken, recursive));
+            } else {
+                requestBuilder.continuationToken(continuationToken);
+            }
 
-        if (!recursive) {
-            requestBuilder.delimiter("/");
-        }
+            if (!recursive) {
+                requestBuilder.delimiter("/");
+            }
 
-        log.info("[S3Service] Listing files - prefix: \"{}\", limit: {}, recursive: {}", prefix, limit, recursive);
-        ListObjectsV2Response response = s3Client.listObjectsV2(requestBuilder.build());
+            // Pages are cached per (prefix, limit, token, recursive) and dropped when
+            // something under the prefix changes, never served stale. Browser uploads
+            // land in S3 behind our back, so while any under the prefix are unconfirmed
+            // the page is read straight from S3 instead (and the index is bypassed).
+            String cacheKey = "list|" + prefix + "|" + limit + "|" + continuationToken + "|" + recursive;
+            if (uploading)
+                response = s3Client.listObjectsV2(requestBuilder.build());
+            else
+                response = cache.get(cacheKey, new RefreshingCache.Tag(CACHE_LISTING, prefix),
+                        Duration.ofMillis(listingTtlMillis), Duration.ZERO,
+                        () -> s3Client.listObjectsV2(requestBuilder.build()));
+        }
 
         List<FileItem> folders = new ArrayList<>();
         if (!recursive) {
             folders = response.commonPrefixes().stream()
                     .filter(p -> (prefix.length() > 0 || !p.prefix().equals("trash/"))
                             && !p.prefix().contains(".metadata/"))
+                    .filter(p -> !tombstones.hides(p.prefix()))
                     .map(p -> {
                         String[] parts = p.prefix().split("/");
                         String name = parts.length > 0 ? parts[parts.length - 1] : "";
@@ -182,26 +625,16 @@ public class S3Service {
                 .filter(c -> !c.key().equals(prefix)) // Filter out self key matches if any
                 .filter(c -> !c.key().startsWith(".metadata/"))
                 .filter(c -> prefix.startsWith("trash/") || !c.key().startsWith("trash/"))
-                .map(c -> {
-                    boolean isFolder = c.key().endsWith("/");
-                    String[] parts = c.key().split("/");
-                    String name = parts.length > 0 ? parts[parts.length - 1] : "";
-
-                    String url = (!isFolder && cloudfrontDomain != null && !cloudfrontDomain.isEmpty())
-                            ? "https://" + cloudfrontDomain + "/" + c.key()
-                            : null;
-
-                    return FileItem.builder()
-                            .key(c.key())
-                            .name(name)
-                            .size(c.size())
-                            .lastModified(c.lastModified())
-                            .isFolder(isFolder)
-                            .url(url)
-                            .build();
-                })
+                .filter(c -> !tombstones.hides(c.key(), c.lastModified()))
+                .map(c -> buildFileItem(c.key(), c.size(), c.lastModified()))
                 .collect(Collectors.toList());
 
+        if ("trash/".equals(prefix) && continuationToken == null) {
+            List<FileItem> withTrashed = new ArrayList<>(trashedItems());
+            withTrashed.addAll(processedItems);
+            processedItems = withTrashed;
+        }
+
         List<FileItem> finalItems;
         if (recursive) {
             finalItems = processedItems;
@@ -210,6 +643,11 @@ public class S3Service {
             List<FileItem> files = processedItems.stream().filter(i -> !Boolean.TRUE.equals(i.getIsFolder()))
                     .collect(Collectors.toList());
             finalItems = new ArrayList<>(folders);
+            // Logically trashed folders are tombstones, not common prefixes of the listing
+            Set<String> listed = folders.stream().map(FileItem::getKey).collect(Collectors.toSet());
+            processedItems.stream()
+                    .filter(i -> Boolean.TRUE.equals(i.getIsFolder()) && !listed.contains(i.getKey()))
+                    .forEach(finalItems::add);
             finalItems.addAll(files);
         }
 
@@ -221,183 +659,371 @@ public class S3Service {
     }
 
     // --- Delete File/Folder ---
-    public void deleteFile(String key) {
-        boolean isFolder = key.endsWith("/");
-
-        if (isFolder) {
-            log.info("[S3Service] Deleting folder and contents: {}", key);
-            // List all objects recursively
-            ListObjectsV2Request listReq = ListObjectsV2Request.builder()
-                    .bucket(bucketName)
-                    .prefix(key)
-                    .build();
-
-            ListObjectsV2Response listRes = s3Client.listObjectsV2(listReq);
-
-            if (listRes.hasContents()) {
-                List<ObjectIdentifier> objects = listRes.contents().stream()
-                        .map(c -> ObjectIdentifier.builder().key(c.key()).build())
-                        .collect(Collectors.toList());
-
-                s3Client.deleteObjects(DeleteObjectsRequest.builder()
-                        .bucket(bucketName)
-                        .delete(Delete.builder().objects(objects).build())
-                        .build());
-
-                log.info("[S3Service] Deleted {} objects from folder {}", objects.size(), key);
-            }
-
-            // The folder object itself would be in the contents if it exists.
-            // Node code does explicit deletion of key at end.
-            s3Client.deleteObject(DeleteObjectRequest.builder().bucket(bucketName).key(key).build());
+    public BulkOperationResult deleteFile(String key) {
+        return bulkDelete(List.of(key));
+    }
 
-        } else {
-            s3Client.deleteObject(DeleteObjectRequest.builder().bucket(bucketName).key(key).build());
-        }
-        invalidateCache();
+    /**
+     * Deletes files and whole folders (keys ending in "/"), however many
+     * objects they hold.
+     */
+    public BulkOperationResult bulkDelete(List<String> keys) {
+        return bulkDelete(keys, JobContext.none());
     }
 
-    public void bulkDelete(List<String> keys) {
+    public BulkOperationResult bulkDelete(List<String> keys, JobContext ctx) {
         if (keys == null || keys.isEmpty())
-            return;
+            return BulkOperationResult.builder().failures(Map.of()).build();
 
         log.info("[S3Service] Bulk deleting {} items", keys.size());
 
-        // S3 deleteObjects supports up to 1000 items per call
-        // For simplicity in this scale, we assume keys < 1000 or handle in batches
-        // I'll implement batching for safety
-        for (int i = 0; i < keys.size(); i += 1000) {
-            List<String> batch = keys.subList(i, Math.min(i + 1000, keys.size()));
-            List<ObjectIdentifier> objects = batch.stream()
-                    .map(key -> ObjectIdentifier.builder().key(key).build())
-                    .collect(Collectors.toList());
-
-            s3Client.deleteObjects(DeleteObjectsRequest.builder()
-                    .bucket(bucketName)
-                    .delete(Delete.builder().objects(objects).build())
-                    .build());
+        // Logically trashed items are purged from where they are
+        List<BulkOperationResult> results = new ArrayList<>();
+        List<String> physical = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            if (key.startsWith("trash/") && tombstones.get(key.substring("trash/".length())) != null)
+                results.add(purgeTombstone(key.substring("trash/".length()), ctx));
+            else
+                physical.add(key);
         }
+        if (!physical.isEmpty())
+            results.add(deleteEngine.delete(physical, ctx, obj -> recordRemoval(obj.key(), obj.size())));
+        return results.size() == 1 ? results.get(0) : combine(results);
+    }
 
-        invalidateCache();
+    private static BulkOperationResult combine(List<BulkOperationResult> results) {
+        Map<String, String> failures = new LinkedHashMap<>();
+        results.forEach(r -> failures.putAll(r.getFailures()));
+        return BulkOperationResult.builder()
+                .succeeded(results.stream().mapToLong(BulkOperationResult::getSucceeded).sum())
+                .failed(results.stream().mapToLong(BulkOperationResult::getFailed).sum())
+                .bytes(results.stream().mapToLong(BulkOperationResult::getBytes).sum())
+                .failures(failures)
+                .build();
     }
 
     // --- Create Folder ---
     public void createFolder(String folderName) {
         String key = folderName.endsWith("/") ? folderName : folderName + "/";
+        Long previousSize = headSize(key);
         s3Client.putObject(PutObjectRequest.builder()
                 .bucket(bucketName)
                 .key(key)
                 .build(), RequestBody.empty());
+        recordPut(key, 0, previousSize);
     }
 
     // --- Move To Trash ---
-    public void moveToTrash(String key) {
-        boolean isTruncated = true;
-        String continuationToken = null;
-
-        while (isTruncated) {
-            ListObjectsV2Request req = ListObjectsV2Request.builder()
-                    .bucket(bucketName)
-                    .prefix(key)
-                    .continuationToken(continuationToken)
-                    .build();
-
-            ListObjectsV2Response res = s3Client.listObjectsV2(req);
-
-            for (S3Object obj : res.contents()) {
-                String trashKey = "trash/" + obj.key();
-
-                // Copy
-                CopyObjectRequest copyReq = CopyObjectRequest.builder()
-                        .sourceBucket(bucketName)
-                        .sourceKey(obj.key())
-                        .destinationBucket(bucketName)
-                        .destinationKey(trashKey)
-                        .build();
-                s3Client.copyObject(copyReq);
-            }
+    public BulkOperationResult moveToTrash(String key) {
+        return moveToTrash(key, JobContext.none());
+    }
 
-            isTruncated = res.isTruncated();
-            continuationToken = res.nextContinuationToken();
+    public BulkOperationResult moveToTrash(String key, JobContext ctx) {
+        if (tombstones.isEnabled()) {
+            // Logical trash: record a tombstone, leave the objects where they are
+            tombstones.trash(key);
+            activityTracker.recordTrash(key);
+            invalidateListings(key);
+            cache.invalidate(CACHE_STARRED);
+            ctx.advance(1, 0);
+            return BulkOperationResult.builder().succeeded(1).failures(Map.of()).build();
         }
-
-        deleteFile(key); // This re-lists and deletes. slightly inefficient but matches Node logic
-                         // calling `deleteFile`.
-        invalidateCache();
+        return moveAll(key, k -> "trash/" + k, ctx);
     }
 
     // --- Restore File ---
-    public void restoreFile(String key) {
+    public BulkOperationResult restoreFile(String key) {
+        return restoreFile(key, JobContext.none());
+    }
+
+    public BulkOperationResult restoreFile(String key, JobContext ctx) {
         if (!key.startsWith("trash/")) {
             throw new RuntimeException("Item is not in trash");
         }
+        String originalKey = key.substring("trash/".length());
+        if (tombstones.restore(originalKey)) {
+            activityTracker.recordRestore(originalKey);
+            invalidateListings(originalKey);
+            cache.invalidate(CACHE_STARRED);
+            ctx.advance(1, 0);
+            return BulkOperationResult.builder().succeeded(1).failures(Map.of()).build();
+        }
+        return moveAll(key, k -> k.substring("trash/".length()), ctx);
+    }
 
-        boolean isTruncated = true;
-        String continuationToken = null;
+    // --- Move / Rename ---
+    public BulkOperationResult move(String source, String destination) {
+        return move(source, destination, JobContext.none());
+    }
 
-        while (isTruncated) {
-            ListObjectsV2Request req = ListObjectsV2Request.builder()
-                    .bucket(bucketName)
-                    .prefix(key)
-                    .continuationToken(continuationToken)
-                    .build();
+    /**
+     * Moves or renames a file, or a folder (source ending in "/") with
+     * everything under it, to the destination key. Objects are moved with
+     * concurrent server-side copies and their sources deleted in batches.
+     * Stars, sharing settings and short links of the moved keys follow them,
+     * so existing links keep working.
+     *
+     * Throws IllegalArgumentException for a move that cannot be done: into
+     * its own subtree, onto an existing key, or of trash or metadata.
+     */
+    public BulkOperationResult move(String source, String destination, JobContext ctx) {
+        String from = stripLeadingSlash(source);
+        String to = stripLeadingSlash(destination);
+        boolean isFolder = from.endsWith("/");
+        if (isFolder && !to.isEmpty() && !to.endsWith("/"))
+            to = to + "/";
+        validateMove(from, to, isFolder);
+
+        log.info("[S3Service] Moving {} to {}", from, to);
+        String target = to;
+        Set<String> moved = new HashSet<>();
+        // Trashed objects inside the folder stay behind, under their tombstones; a copy would be
+        // newer than its tombstone and so show up again at the destination
+        BulkOperationResult result = copyEngine.move(from, obj -> !tombstones.hides(obj.key(), obj.lastModified()),
+                k -> target + k.substring(from.length()), ctx, new BulkCopyEngine.Listener() {
+                    @Override
+                    public void copied(S3Object obj, String destinationKey) {
+                        recordPut(destinationKey, obj.size(), null);
+                    }
+
+                    @Override
+                    public void deleted(S3Object obj) {
+                        recordRemoval(obj.key(), obj.size());
+                        moved.add(obj.key());
+                    }
+                });
+
+        // Metadata can name a folder with no marker object; it follows once everything under it has
+        Map<String, String> metadataFailures = rekeyMetadata(k -> moved.contains(k)
+                || (isFolder && result.getFailed() == 0 && k.startsWith(from) && !tombstones.hides(k))
+                ? target + k.substring(from.length())
+                : null);
+        if (metadataFailures.isEmpty())
+            return result;
 
-            ListObjectsV2Response res = s3Client.listObjectsV2(req);
+        // The objects have moved either way; report what did not follow them
+        Map<String, String> failures = new LinkedHashMap<>(result.getFailures());
+        failures.putAll(metadataFailures);
+        return BulkOperationResult.builder()
+                .succeeded(result.getSucceeded())
+                .failed(result.getFailed() + metadataFailures.size())
+                .bytes(result.getBytes())
+                .failures(failures)
+                .build();
+    }
 
-            for (S3Object obj : res.contents()) {
-                String originalKey = obj.key().substring("trash/".length());
+    private void validateMove(String from, String to, boolean isFolder) {
+        if (from.isEmpty() || to.isEmpty())
+            throw new IllegalArgumentException("Source and destination are required");
+        if (from.equals(to))
+            throw new IllegalArgumentException("Source and destination are the same");
+        if (!isFolder && to.endsWith("/"))
+            throw new IllegalArgumentException("Destination of a file must be a file key");
+        for (String key : List.of(from, to)) {
+            if (key.startsWith("trash/") || key.startsWith(".metadata/"))
+                throw new IllegalArgumentException("Cannot move to or from " + key.substring(0, key.indexOf('/') + 1));
+        }
+        if (isFolder && to.startsWith(from))
+            throw new IllegalArgumentException("Cannot move a folder into itself");
+        if (tombstones.hides(from))
+            throw new IllegalArgumentException("Item is in trash");
+        if (!isFolder && headSize(from) == null)
+            throw new IllegalArgumentException("File not found: " + from);
+
+        boolean exists = isFolder
+                ? s3Client.listObjectsV2(ListObjectsV2Request.builder()
+                        .bucket(bucketName)
+                        .prefix(to)
+                        .maxKeys(1)
+                        .build()).keyCount() > 0
+                : headSize(to) != null;
+        if (exists)
+            throw new IllegalArgumentException("Destination already exists: " + to);
+    }
 
-                CopyObjectRequest copyReq = CopyObjectRequest.builder()
-                        .sourceBucket(bucketName)
-                        .sourceKey(obj.key())
-                        .destinationBucket(bucketName)
-                        .destinationKey(originalKey)
-                        .build();
-                s3Client.copyObject(copyReq);
+    /**
+     * Re-keys stars, sharing settings and short links. newKey gives the new
+     * key for a key that moved, or null for one that did not. Each entry is
+     * written under its new key before the old one is removed, so a failure
+     * part way leaves it under both rather than neither. Returns the keys
+     * whose metadata could not be moved, with the reason.
+     */
+    private Map<String, String> rekeyMetadata(UnaryOperator<String> newKey) {
+        Map<String, String> failures = new LinkedHashMap<>();
+
+        Set<String> stars = loadStarredKeys();
+        for (String key : new ArrayList<>(stars)) {
+            String target = newKey.apply(key);
+            if (target == null)
+                continue;
+            try {
+                String starredAt = metadataStore.get("stars", key, STARS_TYPE);
+                if (starredAt != null) {
+                    metadataStore.update("stars", target, STARS_TYPE, current -> current != null ? current : starredAt);
+                    metadataStore.update("stars", key, STARS_TYPE, current -> null);
+                }
+                stars.remove(key);
+                stars.add(target);
+                cache.invalidate(CACHE_STARRED);
+            } catch (RuntimeException e) {
+                log.warn("[S3Service] Failed to move star of {} to {}: {}", key, target, e.getMessage());
+                failures.put(key, "Moved, but its star could not be updated: " + e.getMessage());
+            }
+        }
+
+        SharingIndex index = getSharingIndex();
+        boolean sharingChanged = false;
+        for (Map.Entry<String, SharingSettings> e : new ArrayList<>(index.asMap().entrySet())) {
+            String target = newKey.apply(e.getKey());
+            if (target == null)
+                continue;
+            try {
+                metadataStore.update("sharing", target, SHARING_TYPE, current -> e.getValue());
+                metadataStore.update("sharing", e.getKey(), SHARING_TYPE, current -> null);
+                index.update(e.getKey(), null);
+                index.update(target, e.getValue());
+                sharingChanged = true;
+            } catch (RuntimeException ex) {
+                log.warn("[S3Service] Failed to move sharing of {} to {}: {}", e.getKey(), target, ex.getMessage());
+                failures.put(e.getKey(), "Moved, but its sharing settings could not be updated: " + ex.getMessage());
+            }
+        }
+        if (sharingChanged)
+            cache.put(CACHE_SHARING, null, index, METADATA_TTL);
+
+        boolean linksChanged = false;
+        for (ShareLink link : getShareLinks().values()) {
+            String from = link.getKey();
+            String target = from == null ? null : newKey.apply(from);
+            if (target == null)
+                continue;
+            try {
+                // The id stays, so the short URL now resolves to the new key
+                metadataStore.update("links", link.getId(), LINKS_TYPE, current -> {
+                    if (current != null && from.equals(current.getKey()))
+                        current.setKey(target);
+                    return current;
+                });
+                linksChanged = true;
+            } catch (RuntimeException e) {
+                log.warn("[S3Service] Failed to move share link {} to {}: {}", link.getId(), target, e.getMessage());
+                failures.put(from, "Moved, but its share link could not be updated: " + e.getMessage());
             }
+        }
+        if (linksChanged)
+            cache.invalidate(CACHE_LINKS);
+        return failures;
+    }
+
+    private static String stripLeadingSlash(String key) {
+        if (key == null)
+            return "";
+        return key.startsWith("/") ? key.substring(1) : key;
+    }
 
-            isTruncated = res.isTruncated();
-            continuationToken = res.nextContinuationToken();
+    /**
+     * Logically trashed keys as items of the trash view, under the trash/
+     * key they would have had in copy mode, so restore and delete work the
+     * same way for both.
+     */
+    private List<FileItem> trashedItems() {
+        return tombstones.all().entrySet().stream()
+                .map(e -> buildFileItem("trash/" + e.getKey(), null, Instant.parse(e.getValue().getTrashedAt())))
+                .map(item -> item.toBuilder().url(null).build())
+                .sorted(Comparator.comparing(FileItem::getKey, BucketKeyIndex.KEY_ORDER))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Physically deletes what a tombstone covers (objects not written since
+     * it was trashed), then drops the tombstone unless something failed.
+     */
+    private BulkOperationResult purgeTombstone(String key, JobContext ctx) {
+        Tombstone tombstone = tombstones.get(key);
+        if (tombstone == null)
+            return BulkOperationResult.builder().failures(Map.of()).build();
+        BulkOperationResult result = deleteEngine.delete(List.of(key),
+                obj -> TombstoneStore.covers(tombstone, obj.lastModified()), ctx,
+                obj -> recordRemoval(obj.key(), obj.size()));
+        if (result.getFailed() == 0) {
+            tombstones.forget(key);
+            activityTracker.forgetTrashed(key);
         }
+        log.info("[S3Service] Purged trashed {}: {} objects, {} failed", key, result.getSucceeded(),
+                result.getFailed());
+        return result;
+    }
+
+    /**
+     * Purges logically trashed keys older than app.trash.retention-days.
+     */
+    @Scheduled(fixedDelayString = "${app.trash.purge-interval-ms:3600000}",
+            initialDelayString = "${app.trash.purge-interval-ms:3600000}")
+    public void purgeExpiredTrash() {
+        tombstones.reload();
+        Instant cutoff = Instant.now().minus(Duration.ofDays(trashRetentionDays));
+        tombstones.all().entrySet().stream()
+                .filter(e -> Instant.parse(e.getValue().getTrashedAt()).isBefore(cutoff))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList())
+                .forEach(key -> {
+                    try {
+                        purgeTombstone(key, JobContext.none());
+                    } catch (RuntimeException e) {
+                        log.error("[S3Service] Failed to purge trashed {}", key, e);
+                    }
+                });
+    }
+
+    /**
+     * Whether key is hidden by logical trash.
+     */
+    public boolean isTrashed(String key) {
+        return tombstones.hides(key);
+    }
+
+    /**
+     * Moves key (or everything under it) with concurrent server-side copies,
+     * keeping usage, the key index and listings in step per object.
+     */
+    private BulkOperationResult moveAll(String key, UnaryOperator<String> destination, JobContext ctx) {
+        return copyEngine.move(key, destination, ctx, new BulkCopyEngine.Listener() {
+            @Override
+            public void copied(S3Object source, String destinationKey) {
+                recordPut(destinationKey, source.size(), null);
+            }
 
-        deleteFile(key);
-        invalidateCache();
+            @Override
+            public void deleted(S3Object source) {
+                recordRemoval(source.key(), source.size());
+            }
+        });
     }
 
     // --- Recent Activity ---
+    /**
+     * Most recently modified files across the whole bucket, served from the
+     * activity tracker. The first call seeds it with a full scan if the
+     * startup reconciliation has not run yet.
+     */
     public List<FileItem> getRecentActivity(int limit) {
         try {
-            List<FileItem> cached = getFromCache("activity");
-            if (cached != null)
-                return cached;
-
-            ListObjectsV2Response res = s3Client.listObjectsV2(ListObjectsV2Request.builder()
-                    .bucket(bucketName)
-                    .maxKeys(1000)
-                    .build());
-
-            List<FileItem> items = res.contents().stream()
-                    .filter(c -> !c.key().endsWith("/")) // filter folders
-                    .map(c -> {
-                        String[] parts = c.key().split("/");
-                        String name = parts.length > 0 ? parts[parts.length - 1] : "";
-                        return FileItem.builder()
-                                .key(c.key())
-                                .name(name)
-                                .size(c.size())
-                                .lastModified(c.lastModified())
-                                .build();
-                    })
-                    .sorted((a, b) -> {
-                        if (a.getLastModified() == null || b.getLastModified() == null)
-                            return 0;
-                        return b.getLastModified().compareTo(a.getLastModified());
-                    })
+            if (!activityTracker.isSeeded()) {
+                seed(activityTracker::isSeeded);
+            } else if (activityTracker.isShort() && refillingActivity.compareAndSet(false, true)) {
+                // Serve what is left now and rescan in the background
+                CompletableFuture.runAsync(this::refillActivity, ioExecutor).whenComplete((v, e) -> {
+                    refillingActivity.set(false);
+                    if (e != null)
+                        log.warn("[S3Service] Failed to refill recent activity: {}", e.getMessage());
+                });
+            }
+            // Ask for the whole ranking; logically trashed files are dropped here
+            return activityTracker.getRecent(Integer.MAX_VALUE).stream()
+                    .filter(o -> !tombstones.hides(o.key(), o.lastModified()))
                     .limit(limit)
+                    .map(o -> buildFileItem(o.key(), o.size(), o.lastModified()))
                     .collect(Collectors.toList());
-
-            putToCache("activity", items);
-            return items;
         } catch (Exception e) {
             log.error("[S3Service] Error fetching recent activity", e);
             throw e;
@@ -407,192 +1033,252 @@ public class S3Service {
     // --- Storage Usage ---
     public Map<String, Object> getStorageUsage() {
         try {
-            Map<String, Object> cached = getFromCache("stats");
-            if (cached != null)
-                return cached;
-
-            log.info("[S3Service] Calculating storage usage for bucket: {}", bucketName);
-            long totalSize = 0;
-            int fileCount = 0;
-            int folderCount = 0;
-            long images = 0, documents = 0, videos = 0, others = 0;
+            if (!usageAggregator.isSeeded()) {
+                seed(usageAggregator::isSeeded);
+            }
+            return usageAggregator.snapshot();
+        } catch (Exception e) {
+            log.error("[S3Service] Error calculating storage usage", e);
+            throw e;
+        }
+    }
 
-            boolean isTruncated = true;
-            String continuationToken = null;
+    /**
+     * Runs the first full scan on demand. Callers that queued up behind the
+     * lock find it seeded instead of scanning again.
+     */
+    private synchronized void seed(BooleanSupplier seeded) {
+        if (!seeded.getAsBoolean())
+            reconcileBucket();
+    }
 
-            while (isTruncated) {
-                ListObjectsV2Request req = ListObjectsV2Request.builder()
-                        .bucket(bucketName)
-                        .continuationToken(continuationToken)
-                        .build();
+    /**
+     * Rescans once removals have drained the recent activity ranking, unless
+     * a reconcile that ran meanwhile already refilled it.
+     */
+    private synchronized void refillActivity() {
+        if (activityTracker.isShort())
+            reconcileBucket();
+    }
 
-                ListObjectsV2Response res = s3Client.listObjectsV2(req);
-                if (res.contents() == null)
-                    break;
-
-                for (S3Object obj : res.contents()) {
-                    if (obj.key().endsWith("/")) {
-                        folderCount++;
-                    } else {
-                        fileCount++;
-                        long size = obj.size() != null ? obj.size() : 0;
-                        totalSize += size;
-
-                        String ext = "";
-                        int lastDot = obj.key().lastIndexOf('.');
-                        if (lastDot > 0)
-                            ext = obj.key().substring(lastDot + 1).toLowerCase();
-
-                        if (Arrays.asList("jpg", "jpeg", "png", "gif", "svg", "webp").contains(ext))
-                            images += size;
-                        else if (Arrays.asList("pdf", "doc", "docx", "txt", "csv", "xlsx", "pptx").contains(ext))
-                            documents += size;
-                        else if (Arrays.asList("mp4", "mov", "avi", "mkv", "webm").contains(ext))
-                            videos += size;
-                        else
-                            others += size;
-                    }
-                }
-                isTruncated = res.isTruncated() != null ? res.isTruncated() : false;
-                continuationToken = res.nextContinuationToken();
-            }
+    /**
+     * Full bucket scan that re-seeds the usage aggregator and the recent
+     * activity tracker and, when enabled, rebuilds the key index. Runs shortly
+     * after startup and then periodically to pick up changes made outside this
+     * service (e.g. browser uploads through presigned URLs).
+     */
+    @Scheduled(fixedDelayString = "${app.stats.reconcile-interval-ms:${app.reconcile-interval-ms:300000}}",
+            initialDelayString = "${app.reconcile-initial-delay-ms:10000}")
+    public synchronized void reconcileBucket() {
+        log.info("[S3Service] Calculating storage usage for bucket: {}", bucketName);
+        StorageUsageAggregator.Tally tally = usageAggregator.newTally();
+        BucketKeyIndex.Builder indexBuilder = keyIndexEnabled ? keyIndex.newBuilder() : null;
+        RecentActivityTracker.Ranking ranking = activityTracker.newRanking();
 
-            final long finalTotal = totalSize;
-            List<Map<String, Object>> breakdown = new ArrayList<>();
-            breakdown.add(createBreakdownItem("Images", getPercent(images, finalTotal), "#3b82f6"));
-            breakdown.add(createBreakdownItem("Documents", getPercent(documents, finalTotal), "#8b5cf6"));
-            breakdown.add(createBreakdownItem("Videos", getPercent(videos, finalTotal), "#ec4899"));
-            breakdown.add(createBreakdownItem("Others", getPercent(others, finalTotal), "#94a3b8"));
-
-            Map<String, Object> result = new HashMap<>();
-            result.put("totalBytes", totalSize);
-            result.put("fileCount", fileCount);
-            result.put("folderCount", folderCount);
-            result.put("breakdown", breakdown);
-            result.put("quotaBytes", 1024L * 1024 * 1024); // 1GB
-
-            putToCache("stats", result);
-            return result;
-        } catch (Exception e) {
-            log.error("[S3Service] Error calculating storage usage", e);
+        try {
+            scanBucket(tally, indexBuilder, ranking);
+        } catch (RuntimeException e) {
+            if (indexBuilder != null)
+                keyIndex.abandon();
+            usageAggregator.abandon();
+            activityTracker.abandon();
             throw e;
         }
+
+        usageAggregator.reset(tally);
+        if (indexBuilder != null)
+            keyIndex.install(indexBuilder);
+        activityTracker.install(ranking);
     }
 
-    private Map<String, Object> createBreakdownItem(String label, int percent, String color) {
-        Map<String, Object> item = new HashMap<>();
-        item.put("label", label);
-        item.put("percent", percent);
-        item.put("color", color);
-        return item;
+    private void scanBucket(StorageUsageAggregator.Tally tally, BucketKeyIndex.Builder indexBuilder,
+            RecentActivityTracker.Ranking ranking) {
+        bucketScanner.scan("", page -> {
+            usageAggregator.addScanned(tally, page);
+            for (S3Object obj : page) {
+                long size = obj.size() != null ? obj.size() : 0;
+                if (indexBuilder != null)
+                    indexBuilder.add(obj.key(), size, obj.lastModified());
+                // Trashed files would only crowd out visible ones
+                if (!tombstones.hides(obj.key(), obj.lastModified()))
+                    ranking.offer(obj);
+            }
+        });
     }
 
-    private int getPercent(long bytes, long total) {
-        if (total <= 0)
-            return 0;
-        return (int) Math.round(((double) bytes / total) * 100);
+    // --- Metadata ---
+    /**
+     * Loads a sharded metadata collection, importing the legacy single-file
+     * map the first time if the collection has not been written yet.
+     */
+    private <V> Map<String, V> loadMetadata(String collection, TypeReference<Map<String, V>> type,
+            Supplier<Map<String, V>> legacy) {
+        Map<String, V> data = metadataStore.loadAll(collection, type);
+        if (data != null)
+            return data;
+
+        Map<String, V> legacyData = legacy.get();
+        if (!legacyData.isEmpty())
+            metadataStore.importLegacy(collection, legacyData, type);
+        return legacyData;
     }
 
-    // --- Starred Keys ---
-    public List<String> getStarredKeys() {
+    private <T> T readLegacyMetadata(String fileName, TypeReference<T> type) {
         try {
             ResponseBytes<GetObjectResponse> bytes = s3Client.getObjectAsBytes(GetObjectRequest.builder()
                     .bucket(bucketName)
-                    .key(".metadata/stars.json")
+                    .key(".metadata/" + fileName)
                     .build());
             String json = bytes.asString(StandardCharsets.UTF_8);
-            return objectMapper.readValue(json, new TypeReference<List<String>>() {
-            });
-        } catch (NoSuchKeyException | IOException e) {
-            return new ArrayList<>();
+            if (json == null || json.trim().isEmpty())
+                return null;
+            return objectMapper.readValue(json, type);
+        } catch (NoSuchKeyException e) {
+            return null;
+        } catch (IOException e) {
+            log.error("Error reading legacy metadata file .metadata/{}", fileName, e);
+            return null;
         }
     }
 
-    public List<String> toggleStar(String key) {
-        List<String> stars = new ArrayList<>(getStarredKeys());
-        if (stars.contains(key)) {
-            stars.remove(key);
-        } else {
-            stars.add(key);
+    // --- Starred Keys ---
+    public List<String> getStarredKeys() {
+        return new ArrayList<>(loadStarredKeys());
+    }
+
+    /**
+     * The star set, refreshed like sharing so stars toggled on another
+     * replica show up within METADATA_TTL.
+     */
+    private Set<String> loadStarredKeys() {
+        Set<String> stars = cache.get(CACHE_STARS, METADATA_TTL, this::readStarredKeys);
+        if (stars != starredKeys) {
+            starredKeys = stars;
+            cache.invalidate(CACHE_STARRED);
         }
+        return stars;
+    }
+
+    private Set<String> readStarredKeys() {
+        Map<String, String> data = loadMetadata("stars", STARS_TYPE, () -> {
+            List<String> legacy = readLegacyMetadata("stars.json", new TypeReference<List<String>>() {
+            });
+            Map<String, String> map = new HashMap<>();
+            if (legacy != null)
+                legacy.forEach(k -> map.put(k, ""));
+            return map;
+        });
+
+        Set<String> stars = ConcurrentHashMap.newKeySet();
+        stars.addAll(data.keySet());
+        return stars;
+    }
 
+    public List<String> toggleStar(String key) {
+        Set<String> stars = loadStarredKeys();
         try {
-            String json = objectMapper.writeValueAsString(stars);
-            s3Client.putObject(PutObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(".metadata/stars.json")
-                    .contentType("application/json")
-                    .build(), RequestBody.fromString(json));
+            String starredAt = metadataStore.update("stars", key, STARS_TYPE,
+                    current -> current == null ? Instant.now().toString() : null);
+            if (starredAt != null)
+                stars.add(key);
+            else
+                stars.remove(key);
         } catch (Exception e) {
             throw new RuntimeException("Failed to update stars", e);
         }
-        return stars;
+        cache.put(CACHE_STARS, null, stars, METADATA_TTL);
+        cache.invalidate(CACHE_STARRED);
+        return new ArrayList<>(stars);
+    }
+
+    /**
+     * Starred view: looks up only the starred keys instead of listing the
+     * bucket. The result is kept until the stars change or refresh.
+     */
+    public List<FileItem> getStarredItems() {
+        Set<String> stars = loadStarredKeys();
+        return cache.get(CACHE_STARRED, METADATA_TTL,
+                () -> Collections.unmodifiableList(resolveItems(visibleKeys(stars))));
     }
 
     // --- Sharing ---
     public Map<String, SharingSettings> getSharingData() {
-        // Check cache
-        Map<String, SharingSettings> cached = getFromCache("sharing");
-        if (cached != null)
-            return cached;
+        return getSharingIndex().asMap();
+    }
 
-        try {
-            ResponseBytes<GetObjectResponse> bytes = s3Client.getObjectAsBytes(GetObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(".metadata/sharing.json")
-                    .build());
-            String json = bytes.asString(StandardCharsets.UTF_8);
-            Map<String, SharingSettings> data = objectMapper.readValue(json,
-                    new TypeReference<Map<String, SharingSettings>>() {
-                    });
-            putToCache("sharing", data);
-            return data;
-        } catch (NoSuchKeyException e) {
-            return new HashMap<>();
-        } catch (IOException e) {
-            log.error("Error getting sharing data", e);
-            return new HashMap<>();
-        }
+    /**
+     * Sharing settings together with their shared-key set and email lookup.
+     * Cached like the raw map was and updated in place by updateSharing.
+     */
+    public SharingIndex getSharingIndex() {
+        return cache.get(CACHE_SHARING, METADATA_TTL, this::loadSharingIndex);
+    }
+
+    private SharingIndex loadSharingIndex() {
+        Map<String, SharingSettings> data = loadMetadata("sharing", SHARING_TYPE, () -> {
+            Map<String, SharingSettings> legacy = readLegacyMetadata("sharing.json", SHARING_TYPE);
+            return legacy != null ? legacy : new HashMap<>();
+        });
+
+        return new SharingIndex(data);
     }
 
     public SharingSettings updateSharing(String key, SharingSettings settings) {
-        Map<String, SharingSettings> allSharing = new HashMap<>(getSharingData());
+        SharingIndex index = getSharingIndex();
+        try {
+            SharingSettings updated = metadataStore.update("sharing", key, SHARING_TYPE,
+                    current -> mergeSharing(current, settings));
 
-        // Merge existing with new
-        SharingSettings existing = allSharing.get(key);
-        if (existing == null) {
-            existing = SharingSettings.builder()
-                    .generalAccess("restricted")
-                    .sharedWith(new ArrayList<>())
-                    .build();
+            index.update(key, updated);
+            cache.put(CACHE_SHARING, null, index, METADATA_TTL);
+            return updated;
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Failed to update sharing", e);
         }
+    }
+
+    private SharingSettings mergeSharing(SharingSettings current, SharingSettings settings) {
+        // Merge existing with new
+        SharingSettings merged = current == null
+                ? SharingSettings.builder()
+                        .generalAccess("restricted")
+                        .sharedWith(new ArrayList<>())
+                        .build()
+                : SharingSettings.builder()
+                        .sharedWith(current.getSharedWith())
+                        .generalAccess(current.getGeneralAccess())
+                        .generalRole(current.getGeneralRole())
+                        .build();
 
         if (settings.getSharedWith() != null) {
-            existing.setSharedWith(settings.getSharedWith());
+            merged.setSharedWith(settings.getSharedWith());
         }
         if (settings.getGeneralAccess() != null) {
-            existing.setGeneralAccess(settings.getGeneralAccess());
+            merged.setGeneralAccess(settings.getGeneralAccess());
         }
         if (settings.getGeneralRole() != null) {
-            existing.setGeneralRole(settings.getGeneralRole());
+            merged.setGeneralRole(settings.getGeneralRole());
         }
-        existing.setUpdatedAt(Instant.now().toString());
+        merged.setUpdatedAt(Instant.now().toString());
+        return merged;
+    }
 
-        allSharing.put(key, existing);
+    /**
+     * Items that are public or shared with anyone, looked up directly rather
+     * than by joining against a full bucket listing.
+     */
+    public List<FileItem> getSharedItems() {
+        return resolveItems(visibleKeys(getSharingIndex().sharedKeys()));
+    }
 
-        try {
-            String json = objectMapper.writeValueAsString(allSharing);
-            s3Client.putObject(PutObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(".metadata/sharing.json")
-                    .contentType("application/json")
-                    .build(), RequestBody.fromString(json));
+    public List<FileItem> getSharedWithMe(String email) {
+        return resolveItems(visibleKeys(getSharingIndex().keysSharedWith(email)));
+    }
 
-            invalidateCache(); // Simple invalidation
-            return existing;
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to update sharing", e);
-        }
+    private List<String> visibleKeys(Collection<String> keys) {
+        return keys.stream()
+                .filter(k -> !k.startsWith("trash/") && !k.startsWith(".metadata/") && !tombstones.hides(k))
+                .collect(Collectors.toList());
     }
 
     public SharingSettings getFileSharing(String key) {
@@ -605,27 +1291,11 @@ public class S3Service {
 
     // --- Short Links ---
     public Map<String, ShareLink> getShareLinks() {
-        Map<String, ShareLink> cached = getFromCache("shareLinks");
-        if (cached != null)
-            return cached;
-
         try {
-            ResponseBytes<GetObjectResponse> bytes = s3Client.getObjectAsBytes(GetObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(".metadata/links.json")
-                    .build());
-            String json = bytes.asString(StandardCharsets.UTF_8);
-            if (json == null || json.trim().isEmpty()) {
-                return new HashMap<>();
-            }
-            Map<String, ShareLink> data = objectMapper.readValue(json,
-                    new TypeReference<Map<String, ShareLink>>() {
-                    });
-            putToCache("shareLinks", data);
-            return data;
-        } catch (NoSuchKeyException e) {
-            log.info("Metadata file .metadata/links.json not found, starting fresh.");
-            return new HashMap<>();
+            return cache.get(CACHE_LINKS, METADATA_TTL, () -> loadMetadata("links", LINKS_TYPE, () -> {
+                Map<String, ShareLink> legacy = readLegacyMetadata("links.json", LINKS_TYPE);
+                return legacy != null ? legacy : new HashMap<>();
+            }));
         } catch (Exception e) {
             log.error("Error retrieving share links metadata", e);
             return new HashMap<>();
@@ -636,36 +1306,29 @@ public class S3Service {
         if (key == null)
             return null;
 
-        Map<String, ShareLink> allLinks = new HashMap<>(getShareLinks());
-
         // Find existing for this key
-        Optional<ShareLink> existing = allLinks.values().stream()
+        Optional<ShareLink> existing = getShareLinks().values().stream()
                 .filter(l -> key.equals(l.getKey()))
                 .findFirst();
 
         if (existing.isPresent())
             return existing.get();
 
-        // Create new
-        String id = UUID.randomUUID().toString().substring(0, 8);
-        ShareLink link = ShareLink.builder()
-                .id(id)
-                .key(key)
-                .createdAt(Instant.now().toString())
-                .build();
-
-        allLinks.put(id, link);
-
         try {
-            String json = objectMapper.writeValueAsString(allLinks);
-            s3Client.putObject(PutObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(".metadata/links.json")
-                    .contentType("application/json")
-                    .build(), RequestBody.fromString(json));
+            ShareLink saved;
+            do {
+                // Create new; the conditional write keeps an id collision from clobbering another link
+                ShareLink link = ShareLink.builder()
+                        .id(UUID.randomUUID().toString().substring(0, 8))
+                        .key(key)
+                        .createdAt(Instant.now().toString())
+                        .build();
+                saved = metadataStore.update("links", link.getId(), LINKS_TYPE,
+                        current -> current != null ? current : link);
+            } while (!key.equals(saved.getKey()));
 
-            invalidateCache();
-            return link;
+            cache.invalidate(CACHE_LINKS);
+            return saved;
         } catch (Exception e) {
             log.error("CRITICAL: Failed to save short link metadata to S3 for key: {}", key, e);
             throw new RuntimeException("Failed to save share link: " + e.getMessage(), e);
@@ -677,55 +1340,17 @@ public class S3Service {
     }
 
     /**
-     * Downloads a folder as a ZIP stream
+     * Downloads a folder as an archive stream.
      */
-    public void downloadFolder(String prefix, OutputStream os) throws IOException {
+    public void downloadFolder(String prefix, ArchiveFormat format, OutputStream os) throws IOException {
         String finalPrefix = prefix.endsWith("/") ? prefix : prefix + "/";
+        archiveBuilder.writeFolder(finalPrefix, format, os, null);
+    }
 
-        try (ZipOutputStream zos = new ZipOutputStream(os)) {
-            String continuationToken = null;
-            boolean isTruncated = true;
-
-            while (isTruncated) {
-                ListObjectsV2Request listReq = ListObjectsV2Request.builder()
-                        .bucket(bucketName)
-                        .prefix(finalPrefix)
-                        .continuationToken(continuationToken)
-                        .build();
-
-                ListObjectsV2Response listRes = s3Client.listObjectsV2(listReq);
-
-                for (S3Object obj : listRes.contents()) {
-                    if (obj.key().endsWith("/")) {
-                        continue; // Skip folder markers
-                    }
-
-                    // Get relative path for ZIP entry
-                    String relativePath = obj.key().substring(finalPrefix.length());
-
-                    ZipEntry zipEntry = new ZipEntry(relativePath);
-                    zos.putNextEntry(zipEntry);
-
-                    GetObjectRequest getReq = GetObjectRequest.builder()
-                            .bucket(bucketName)
-                            .key(obj.key())
-                            .build();
-
-                    // Stream from S3 to ZIP
-                    try (var s3Stream = s3Client.getObject(getReq)) {
-                        byte[] buffer = new byte[8192];
-                        int len;
-                        while ((len = s3Stream.read(buffer)) > 0) {
-                            zos.write(buffer, 0, len);
-                        }
-                    }
-                    zos.closeEntry();
-                }
-
-                isTruncated = listRes.isTruncated();
-                continuationToken = listRes.nextContinuationToken();
-            }
-            zos.finish();
-        }
+    /**
+     * Downloads a selection of files and folders as one archive stream.
+     */
+    public void downloadSelection(List<String> keys, ArchiveFormat format, OutputStream os) throws IOException {
+        archiveBuilder.writeSelection(keys, format, os, null);
     }
 }
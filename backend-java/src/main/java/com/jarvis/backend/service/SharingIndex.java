@@ -0,0 +1,102 @@
+package com.jarvis.backend.service;
+
+import com.jarvis.backend.dto.SharingSettings;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sharing settings keyed by object, plus the lookups the views need: the set
+ * of keys that are shared at all, and an inverted email -> keys map so
+ * "shared with me" and permission checks are hash lookups instead of scans.
+ */
+public class SharingIndex {
+
+    private final Map<String, SharingSettings> settings = new ConcurrentHashMap<>();
+    private final Set<String> sharedKeys = ConcurrentHashMap.newKeySet();
+    private final Set<String> publicKeys = ConcurrentHashMap.newKeySet();
+    private final Map<String, Set<String>> keysByEmail = new ConcurrentHashMap<>();
+
+    public SharingIndex(Map<String, SharingSettings> data) {
+        data.forEach(this::add);
+    }
+
+    public Map<String, SharingSettings> asMap() {
+        return Collections.unmodifiableMap(settings);
+    }
+
+    public SharingSettings get(String key) {
+        return settings.get(key);
+    }
+
+    public synchronized void update(String key, SharingSettings updated) {
+        remove(key);
+        if (updated != null)
+            add(key, updated);
+    }
+
+    /**
+     * Keys that are public or explicitly shared with at least one user.
+     */
+    public Set<String> sharedKeys() {
+        return Collections.unmodifiableSet(sharedKeys);
+    }
+
+    public Set<String> keysSharedWith(String email) {
+        Set<String> keys = keysByEmail.get(normalizeEmail(email));
+        return keys != null ? Collections.unmodifiableSet(keys) : Collections.emptySet();
+    }
+
+    public boolean isPublic(String key) {
+        return publicKeys.contains(key);
+    }
+
+    public boolean isSharedWith(String key, String email) {
+        return keysSharedWith(email).contains(key);
+    }
+
+    public static String normalizeEmail(String email) {
+        return email == null ? "" : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private void add(String key, SharingSettings s) {
+        settings.put(key, s);
+        boolean isPublic = "public".equals(s.getGeneralAccess());
+        if (isPublic)
+            publicKeys.add(key);
+
+        boolean isSharedWithOthers = false;
+        if (s.getSharedWith() != null) {
+            for (SharingSettings.SharedUser user : s.getSharedWith()) {
+                if (user == null || user.getEmail() == null)
+                    continue;
+                keysByEmail.computeIfAbsent(normalizeEmail(user.getEmail()), e -> ConcurrentHashMap.newKeySet())
+                        .add(key);
+                isSharedWithOthers = true;
+            }
+        }
+        if (isPublic || isSharedWithOthers)
+            sharedKeys.add(key);
+    }
+
+    private void remove(String key) {
+        SharingSettings old = settings.remove(key);
+        if (old == null)
+            return;
+        publicKeys.remove(key);
+        sharedKeys.remove(key);
+        if (old.getSharedWith() != null) {
+            for (SharingSettings.SharedUser user : old.getSharedWith()) {
+                if (user == null || user.getEmail() == null)
+                    continue;
+                keysByEmail.computeIfPresent(normalizeEmail(user.getEmail()), (e, keys) -> {
+                    keys.remove(key);
+                    return keys.isEmpty() ? null : keys;
+                });
+            }
+        }
+    }
+}
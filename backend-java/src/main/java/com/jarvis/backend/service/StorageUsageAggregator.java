@@ -0,0 +1,269 @@
+package com.jarvis.backend.service;
+
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Running totals for the dashboard storage figures. Seeded from a full bucket
+ * scan and then kept current by deltas from the service's own mutations, so
+ * serving the stats never has to touch S3.
+ *
+ * Writes made while a reconciliation scan is running are remembered per key
+ * and settled when the scan is installed, so the new totals neither lose them
+ * nor count them twice, whichever side of the listing they landed on. A write
+ * is only reported after S3 has applied it, so what the scan counted for a key
+ * cannot be inferred from the write; the scan keeps a compact hash-to-size
+ * table of everything it counted instead.
+ */
+@Component
+public class StorageUsageAggregator {
+
+    private static final Set<String> IMAGE_EXTENSIONS = Set.of("jpg", "jpeg", "png", "gif", "svg", "webp");
+    private static final Set<String> DOCUMENT_EXTENSIONS = Set.of("pdf", "doc", "docx", "txt", "csv", "xlsx", "pptx");
+    private static final Set<String> VIDEO_EXTENSIONS = Set.of("mp4", "mov", "avi", "mkv", "webm");
+
+    private static final long QUOTA_BYTES = 1024L * 1024 * 1024; // 1GB
+
+    private final Tally totals = new Tally();
+    private volatile boolean seeded = false;
+
+    // Keys written while a scan is running -> latest size (null once removed),
+    // and those of them the scan skipped
+    private Map<String, Long> pending;
+    private Set<String> skipped;
+
+    public boolean isSeeded() {
+        return seeded;
+    }
+
+    /**
+     * Starts a rescan; writes from now on are settled over its result.
+     */
+    public synchronized Tally newTally() {
+        pending = new HashMap<>();
+        skipped = new HashSet<>();
+        Tally tally = new Tally();
+        tally.counted = new CountedSizes();
+        return tally;
+    }
+
+    /**
+     * Adds a page of the scan. Keys already written during the scan are left
+     * to reset, which knows their latest size.
+     */
+    public synchronized void addScanned(Tally tally, List<S3Object> page) {
+        for (S3Object obj : page) {
+            if (pending != null && pending.containsKey(obj.key())) {
+                skipped.add(obj.key());
+                continue;
+            }
+            long size = obj.size() != null ? obj.size() : 0;
+            tally.add(obj.key(), size);
+            if (tally.counted != null)
+                tally.counted.put(obj.key(), size);
+        }
+    }
+
+    /**
+     * Replaces the running totals with the result of a full scan, after
+     * applying the writes made while it ran.
+     */
+    public synchronized void reset(Tally scanned) {
+        if (pending != null) {
+            pending.forEach((key, size) -> {
+                // Listed before its first write was recorded: take back what the scan counted
+                if (!skipped.contains(key) && scanned.counted != null) {
+                    long counted = scanned.counted.get(key);
+                    if (counted >= 0)
+                        scanned.remove(key, counted);
+                }
+                if (size != null)
+                    scanned.add(key, size);
+            });
+        }
+        pending = null;
+        skipped = null;
+        scanned.counted = null;
+        totals.copyFrom(scanned);
+        seeded = true;
+    }
+
+    public synchronized void abandon() {
+        pending = null;
+        skipped = null;
+    }
+
+    public synchronized void recordPut(String key, long size, Long previousSize) {
+        if (previousSize != null) {
+            totals.remove(key, previousSize);
+        }
+        totals.add(key, size);
+        if (pending != null)
+            pending.put(key, size);
+    }
+
+    public synchronized void recordRemoval(String key, long size) {
+        totals.remove(key, size);
+        if (pending != null)
+            pending.put(key, null);
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        List<Map<String, Object>> breakdown = new ArrayList<>();
+        breakdown.add(createBreakdownItem("Images", getPercent(totals.images, totals.totalSize), "#3b82f6"));
+        breakdown.add(createBreakdownItem("Documents", getPercent(totals.documents, totals.totalSize), "#8b5cf6"));
+        breakdown.add(createBreakdownItem("Videos", getPercent(totals.videos, totals.totalSize), "#ec4899"));
+        breakdown.add(createBreakdownItem("Others", getPercent(totals.others, totals.totalSize), "#94a3b8"));
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("totalBytes", totals.totalSize);
+        result.put("fileCount", totals.fileCount);
+        result.put("folderCount", totals.folderCount);
+        result.put("breakdown", breakdown);
+        result.put("quotaBytes", QUOTA_BYTES);
+        return result;
+    }
+
+    private Map<String, Object> createBreakdownItem(String label, int percent, String color) {
+        Map<String, Object> item = new HashMap<>();
+        item.put("label", label);
+        item.put("percent", percent);
+        item.put("color", color);
+        return item;
+    }
+
+    private int getPercent(long bytes, long total) {
+        if (total <= 0)
+            return 0;
+        return (int) Math.round(((double) bytes / total) * 100);
+    }
+
+    /**
+     * Mutable accumulator used both for the live totals and for building a
+     * replacement during a reconciliation scan. Not thread-safe on its own.
+     */
+    public static class Tally {
+        private long totalSize;
+        private long fileCount;
+        private long folderCount;
+        private long images, documents, videos, others;
+        private CountedSizes counted; // only while building from a scan
+
+        public void add(String key, long size) {
+            apply(key, size, 1);
+        }
+
+        public void remove(String key, long size) {
+            apply(key, size, -1);
+        }
+
+        private void apply(String key, long size, int sign) {
+            // Internal bookkeeping objects are not user storage
+            if (key.startsWith(".metadata/"))
+                return;
+
+            if (key.endsWith("/")) {
+                folderCount += sign;
+                return;
+            }
+
+            fileCount += sign;
+            long delta = sign * size;
+            totalSize += delta;
+
+            String ext = "";
+            int lastDot = key.lastIndexOf('.');
+            if (lastDot > 0)
+                ext = key.substring(lastDot + 1).toLowerCase();
+
+            if (IMAGE_EXTENSIONS.contains(ext))
+                images += delta;
+            else if (DOCUMENT_EXTENSIONS.contains(ext))
+                documents += delta;
+            else if (VIDEO_EXTENSIONS.contains(ext))
+                videos += delta;
+            else
+                others += delta;
+        }
+
+        private void copyFrom(Tally other) {
+            totalSize = other.totalSize;
+            fileCount = other.fileCount;
+            folderCount = other.folderCount;
+            images = other.images;
+            documents = other.documents;
+            videos = other.videos;
+            others = other.others;
+        }
+    }
+
+    /**
+     * Size the scan counted per key, as an open-addressing table of 64-bit
+     * key hashes, so a full scan costs 16 bytes per object rather than a map
+     * of strings. A hash collision can at worst misattribute one key's size.
+     */
+    private static final class CountedSizes {
+        private long[] hashes = new long[1 << 12];
+        private long[] sizes = new long[1 << 12];
+        private int count;
+
+        void put(String key, long size) {
+            if (2 * (count + 1) > hashes.length)
+                grow();
+            if (insert(hash(key), size))
+                count++;
+        }
+
+        /**
+         * The counted size, or -1 if the key was not counted.
+         */
+        long get(String key) {
+            long h = hash(key);
+            int mask = hashes.length - 1;
+            for (int i = (int) h & mask; hashes[i] != 0; i = (i + 1) & mask) {
+                if (hashes[i] == h)
+                    return sizes[i];
+            }
+            return -1;
+        }
+
+        private boolean insert(long h, long size) {
+            int mask = hashes.length - 1;
+            int i = (int) h & mask;
+            while (hashes[i] != 0 && hashes[i] != h)
+                i = (i + 1) & mask;
+            boolean added = hashes[i] == 0;
+            hashes[i] = h;
+            sizes[i] = size;
+            return added;
+        }
+
+        private void grow() {
+            long[] oldHashes = hashes;
+            long[] oldSizes = sizes;
+            hashes = new long[oldHashes.length * 2];
+            sizes = new long[oldSizes.length * 2];
+            for (int i = 0; i < oldHashes.length; i++) {
+                if (oldHashes[i] != 0)
+                    insert(oldHashes[i], oldSizes[i]);
+            }
+        }
+
+        // 64-bit FNV-1a, never 0 since 0 marks an empty slot
+        private static long hash(String key) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < key.length(); i++) {
+                h ^= key.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            return h == 0 ? 1 : h;
+        }
+    }
+}
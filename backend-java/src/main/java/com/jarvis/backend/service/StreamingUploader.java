@@ -0,0 +1,303 @@
+package com.jarvis.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+
+/**
+ * Uploads a stream of unknown length without holding it in memory.
+ *
+ * Bytes are collected into part-sized buffers from the BufferPool. A stream
+ * that fits in one buffer becomes a single PutObject; anything larger
+ * becomes a multipart upload whose parts are sent on the I/O pool while
+ * the next part is filled, with at most app.upload.parts-in-flight parts
+ * outstanding per upload.
+ *
+ * S3 allows 10,000 parts, so parts grow as an upload gets long: each run of
+ * 1,000 parts uses twice as many buffers per part as the one before, up to
+ * the size of the pool. With the default 8 MB buffers and 32 of them that
+ * reaches about 1.5 TB instead of 78 GB.
+ */
+@Component
+@Slf4j
+public class StreamingUploader {
+
+    private static final int MAX_PARTS = 10000;
+    private static final int PARTS_PER_SIZE = 1000;
+
+    private final S3Client s3Client;
+    private final BufferPool bufferPool;
+    private final ExecutorService ioExecutor;
+
+    @Value("${aws.s3.bucket-name}")
+    private String bucketName;
+
+    @Value("${app.upload.parts-in-flight:4}")
+    private int partsInFlight;
+
+    public StreamingUploader(S3Client s3Client, BufferPool bufferPool,
+            @Qualifier("s3IoExecutor") ExecutorService ioExecutor) {
+        this.s3Client = s3Client;
+        this.bufferPool = bufferPool;
+        this.ioExecutor = ioExecutor;
+    }
+
+    /**
+     * Uploads the stream to key and returns the number of bytes written. The
+     * stream is read to the end but not closed.
+     */
+    public long upload(String key, String contentType, InputStream in) {
+        UploadStream out = open(key, contentType);
+        try {
+            in.transferTo(out);
+            out.close();
+            return out.size();
+        } catch (IOException e) {
+            out.abort();
+            if (e instanceof InterruptedIOException)
+                Thread.currentThread().interrupt();
+            throw new RuntimeException("Failed to read upload stream for " + key, e);
+        } catch (RuntimeException e) {
+            out.abort();
+            throw e;
+        }
+    }
+
+    /**
+     * An OutputStream that uploads what is written to it, for producers that
+     * push bytes rather than hand over a stream. close() completes the
+     * upload; abort() discards it.
+     */
+    public UploadStream open(String key, String contentType) {
+        return new UploadStream(key, contentType);
+    }
+
+    public final class UploadStream extends OutputStream {
+        private final String key;
+        private final String contentType;
+        private final Semaphore inFlight = new Semaphore(partsInFlight);
+        private final List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+        private String uploadId;
+        private List<byte[]> buffers; // the part being filled
+        private long filled;
+        private long size;
+        private boolean done;
+
+        private UploadStream(String key, String contentType) {
+            this.key = key;
+            this.contentType = contentType;
+        }
+
+        /**
+         * Bytes written so far.
+         */
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (done)
+                throw new IOException("Upload of " + key + " is already closed");
+            int bufferSize = bufferPool.bufferSize();
+            while (len > 0) {
+                if (buffers == null) {
+                    buffers = acquire();
+                } else if (filled == (long) buffers.size() * bufferSize) {
+                    // Only now that more data is coming: a stream of exactly one buffer stays a single PUT
+                    sendPart();
+                    buffers = acquire();
+                }
+                int at = (int) (filled % bufferSize);
+                int n = Math.min(len, bufferSize - at);
+                System.arraycopy(b, off, buffers.get((int) (filled / bufferSize)), at, n);
+                filled += n;
+                size += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        /**
+         * Sends whatever is buffered and completes the upload.
+         */
+        @Override
+        public void close() throws IOException {
+            if (done)
+                return;
+            done = true;
+            try {
+                if (uploadId == null) {
+                    putSingle();
+                    return;
+                }
+                if (filled > 0)
+                    sendPart();
+
+                List<CompletedPart> completed = parts.stream()
+                        .map(CompletableFuture::join)
+                        .sorted(Comparator.comparing(CompletedPart::partNumber))
+                        .collect(Collectors.toList());
+
+                s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .uploadId(uploadId)
+                        .multipartUpload(CompletedMultipartUpload.builder().parts(completed).build())
+                        .build());
+                log.info("[StreamingUploader] Uploaded {} ({} bytes, {} parts)", key, size, completed.size());
+            } catch (RuntimeException | IOException e) {
+                abortUpload();
+                if (e instanceof CompletionException && e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw e;
+            } finally {
+                releaseBuffer();
+            }
+        }
+
+        /**
+         * Discards the upload. Safe to call at any point, including after a
+         * failed close().
+         */
+        public void abort() {
+            if (!done) {
+                done = true;
+                abortUpload();
+            }
+            releaseBuffer();
+        }
+
+        private void putSingle() {
+            s3Client.putObject(PutObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .contentType(contentType)
+                    .build(), filled == 0
+                            ? RequestBody.empty()
+                            : RequestBody.fromInputStream(content(buffers, filled), filled));
+        }
+
+        // Hands the current buffer to the I/O pool
+        private void sendPart() throws IOException {
+            if (parts.size() == MAX_PARTS)
+                throw new IOException("Upload of " + key + " is too large: " + MAX_PARTS + " parts used");
+            if (uploadId == null) {
+                uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .contentType(contentType)
+                        .build()).uploadId();
+            }
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while uploading " + key);
+            }
+            for (CompletableFuture<CompletedPart> part : parts) {
+                if (part.isCompletedExceptionally()) {
+                    inFlight.release();
+                    try {
+                        part.join();
+                    } catch (CompletionException e) {
+                        if (e.getCause() instanceof RuntimeException)
+                            throw (RuntimeException) e.getCause();
+                        throw e;
+                    }
+                }
+            }
+            parts.add(uploadPart(uploadId, parts.size() + 1, buffers, filled));
+            buffers = null;
+            filled = 0;
+        }
+
+        private CompletableFuture<CompletedPart> uploadPart(String uploadId, int partNumber, List<byte[]> data,
+                long length) {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    UploadPartResponse res = s3Client.uploadPart(UploadPartRequest.builder()
+                            .bucket(bucketName)
+                            .key(key)
+                            .uploadId(uploadId)
+                            .partNumber(partNumber)
+                            .contentLength(length)
+                            .build(), RequestBody.fromInputStream(content(data, length), length));
+                    return CompletedPart.builder().partNumber(partNumber).eTag(res.eTag()).build();
+                } finally {
+                    bufferPool.release(data);
+                    inFlight.release();
+                }
+            }, ioExecutor);
+        }
+
+        // Buffers for the next part, more of them once many parts have been used
+        private List<byte[]> acquire() throws IOException {
+            int count = Math.min(1 << Math.min(parts.size() / PARTS_PER_SIZE, 30), bufferPool.buffers());
+            try {
+                return bufferPool.acquire(count);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while uploading " + key);
+            }
+        }
+
+        private void releaseBuffer() {
+            if (buffers != null) {
+                bufferPool.release(buffers);
+                buffers = null;
+            }
+        }
+
+        private InputStream content(List<byte[]> data, long length) {
+            List<InputStream> streams = new ArrayList<>(data.size());
+            for (byte[] buffer : data) {
+                int n = (int) Math.min(buffer.length, length);
+                streams.add(new ByteArrayInputStream(buffer, 0, n));
+                length -= n;
+            }
+            return new SequenceInputStream(Collections.enumeration(streams));
+        }
+
+        private void abortUpload() {
+            // Let in-flight parts finish first so their buffers return to the pool
+            parts.forEach(p -> p.exceptionally(e -> null).join());
+            if (uploadId == null)
+                return;
+            try {
+                s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .uploadId(uploadId)
+                        .build());
+            } catch (RuntimeException e) {
+                log.warn("[StreamingUploader] Failed to abort multipart upload {} of {}", uploadId, key, e);
+            }
+        }
+    }
+}
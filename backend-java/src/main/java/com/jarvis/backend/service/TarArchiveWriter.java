@@ -0,0 +1,152 @@
+package com.jarvis.backend.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Writes a POSIX (pax) tar stream. Each entry is copied straight from its
+ * content through a fixed buffer, so memory use does not depend on entry
+ * size or count. Names longer than the ustar fields allow, non-ASCII names
+ * and entries of 8 GB or more get a pax extended header.
+ */
+public class TarArchiveWriter implements ArchiveWriter<TarArchiveWriter.Entry> {
+
+    private static final int BLOCK = 512;
+    private static final int NAME_LENGTH = 100;
+    private static final long MAX_OCTAL_SIZE = 077777777777L;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    public TarArchiveWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    public static final class Entry implements Closeable {
+        final String name;
+        final Instant modified;
+        final ObjectPrefetcher.Content content;
+
+        Entry(String name, Instant modified, ObjectPrefetcher.Content content) {
+            this.name = name;
+            this.modified = modified;
+            this.content = content;
+        }
+
+        @Override
+        public void close() {
+            content.close();
+        }
+    }
+
+    @Override
+    public Entry prepare(String name, Instant modified, ObjectPrefetcher.Content content) {
+        return new Entry(name, modified, content);
+    }
+
+    @Override
+    public void write(Entry entry) throws IOException {
+        long size = entry.content.length();
+        long mtime = (entry.modified != null ? entry.modified : Instant.now()).getEpochSecond();
+        byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+        boolean asciiName = name.length == entry.name.length();
+
+        if (name.length > NAME_LENGTH || !asciiName || size > MAX_OCTAL_SIZE) {
+            StringBuilder pax = new StringBuilder();
+            if (name.length > NAME_LENGTH || !asciiName)
+                pax.append(paxRecord("path", entry.name));
+            if (size > MAX_OCTAL_SIZE)
+                pax.append(paxRecord("size", Long.toString(size)));
+            byte[] records = pax.toString().getBytes(StandardCharsets.UTF_8);
+            writeHeader(asciiPrefix("PaxHeaders/" + entry.name), records.length, mtime, (byte) 'x');
+            out.write(records);
+            pad(records.length);
+        }
+
+        writeHeader(asciiPrefix(entry.name), Math.min(size, MAX_OCTAL_SIZE), mtime, (byte) '0');
+        long copied = 0;
+        try (InputStream in = entry.content.open()) {
+            int n;
+            while (copied < size && (n = in.read(buffer, 0, (int) Math.min(buffer.length, size - copied))) > 0) {
+                out.write(buffer, 0, n);
+                copied += n;
+            }
+        }
+        // The header already promised size bytes; a short object would corrupt the rest of the stream
+        if (copied != size)
+            throw new IOException("Object " + entry.name + " ended after " + copied + " of " + size + " bytes");
+        pad(size);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        out.write(new byte[2 * BLOCK]);
+        out.flush();
+    }
+
+    private void writeHeader(byte[] name, long size, long mtime, byte type) throws IOException {
+        byte[] header = new byte[BLOCK];
+        System.arraycopy(name, 0, header, 0, name.length);
+        octal(header, 100, 8, 0644);
+        octal(header, 108, 8, 0);
+        octal(header, 116, 8, 0);
+        octal(header, 124, 12, size);
+        octal(header, 136, 12, mtime);
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        header[156] = type;
+        System.arraycopy("ustar\0".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 6);
+        header[263] = '0';
+        header[264] = '0';
+
+        long checksum = 0;
+        for (byte b : header)
+            checksum += b & 0xFF;
+        octal(header, 148, 7, checksum);
+        out.write(header);
+    }
+
+    private void pad(long written) throws IOException {
+        int remainder = (int) (written % BLOCK);
+        if (remainder != 0)
+            out.write(new byte[BLOCK - remainder]);
+    }
+
+    /**
+     * Zero-padded octal with a trailing NUL, filling the field.
+     */
+    private static void octal(byte[] header, int offset, int length, long value) {
+        String digits = Long.toOctalString(value);
+        int width = length - 1;
+        for (int i = 0; i < width; i++) {
+            int d = digits.length() - width + i;
+            header[offset + i] = (byte) (d >= 0 ? digits.charAt(d) : '0');
+        }
+        header[offset + width] = 0;
+    }
+
+    /**
+     * A fallback name for the ustar field: the name with non-ASCII characters
+     * replaced, cut to fit. Readers that understand pax use the full name.
+     */
+    private static byte[] asciiPrefix(String name) {
+        byte[] ascii = name.replaceAll("[^\\x20-\\x7E]", "_").getBytes(StandardCharsets.US_ASCII);
+        return ascii.length <= NAME_LENGTH ? ascii : Arrays.copyOf(ascii, NAME_LENGTH);
+    }
+
+    /**
+     * A pax record, "<length> <key>=<value>\n", where length counts itself.
+     */
+    private static String paxRecord(String key, String value) {
+        int body = (" " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8).length;
+        int length = body + Integer.toString(body).length();
+        if (Integer.toString(length).length() != Integer.toString(body).length())
+            length++;
+        return length + " " + key + "=" + value + "\n";
+    }
+}
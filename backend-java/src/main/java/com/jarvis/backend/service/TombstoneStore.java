@@ -0,0 +1,185 @@
+package com.jarvis.backend.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.jarvis.backend.dto.Tombstone;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Logical trash: a trashed key or folder prefix is recorded as a tombstone
+ * in the "trash" metadata collection instead of being copied to trash/, so
+ * trash and restore cost one metadata write whatever the size.
+ *
+ * A tombstone hides the objects it covers that are not newer than it, so
+ * anything written under a trashed folder (or over a trashed file) later
+ * stays visible, and only the trashed objects are purged. The cutoff is taken
+ * from S3's clock, in whole seconds like LastModified, so it does not depend
+ * on this server's clock. Tombstones are
+ * cached and refreshed like stars and sharing, so trash and restore on
+ * another replica show up within a few seconds; new ones are only created
+ * when app.trash.logical is on, but existing ones are honoured either way.
+ */
+@Component
+@Slf4j
+public class TombstoneStore {
+
+    private static final String COLLECTION = "trash";
+    private static final String CACHE_KEY = "tombstones";
+    private static final Duration TTL = Duration.ofSeconds(5);
+    private static final TypeReference<Map<String, Tombstone>> TYPE = new TypeReference<>() {
+    };
+
+    private final MetadataStore metadataStore;
+    private final RefreshingCache cache;
+
+    @Value("${app.trash.logical:false}")
+    private boolean enabled;
+
+    public TombstoneStore(MetadataStore metadataStore, RefreshingCache cache) {
+        this.metadataStore = metadataStore;
+        this.cache = cache;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Map<String, Tombstone> all() {
+        return Collections.unmodifiableMap(load());
+    }
+
+    public Tombstone get(String key) {
+        return load().get(key);
+    }
+
+    public Tombstone trash(String key) {
+        Tombstone saved = metadataStore.update(COLLECTION, key, TYPE,
+                (current, now) -> Tombstone.builder().trashedAt(now.toString()).build());
+        load().put(key, saved);
+        return saved;
+    }
+
+    /**
+     * Removes the tombstone of key; false if there was none.
+     */
+    public boolean restore(String key) {
+        Map<String, Tombstone> loaded = load();
+        if (!loaded.containsKey(key))
+            return false;
+        metadataStore.update(COLLECTION, key, TYPE, current -> null);
+        loaded.remove(key);
+        return true;
+    }
+
+    /**
+     * Whether an object listed with this lastModified is trashed.
+     */
+    public boolean hides(String key, Instant lastModified) {
+        Map<String, Tombstone> loaded = load();
+        if (loaded.isEmpty())
+            return false;
+        for (int slash = key.indexOf('/'); slash >= 0; slash = key.indexOf('/', slash + 1)) {
+            if (covers(loaded.get(key.substring(0, slash + 1)), lastModified))
+                return true;
+        }
+        return covers(loaded.get(key), lastModified);
+    }
+
+    /**
+     * Whether a key is trashed, for callers that do not know when it was
+     * written. A trashed folder that has since been written to is given the
+     * benefit of the doubt.
+     */
+    public boolean hides(String key) {
+        Map<String, Tombstone> loaded = load();
+        if (loaded.isEmpty())
+            return false;
+        for (int slash = key.indexOf('/'); slash >= 0; slash = key.indexOf('/', slash + 1)) {
+            Tombstone t = loaded.get(key.substring(0, slash + 1));
+            if (t != null && !t.isReopened())
+                return true;
+        }
+        Tombstone t = loaded.get(key);
+        return t != null && !t.isReopened();
+    }
+
+    /**
+     * Records that key is about to be written, so a trashed folder it lands
+     * in (or a trashed file it replaces) shows up again, with only the new
+     * content.
+     */
+    public void noteWrite(String key) {
+        Map<String, Tombstone> loaded = load();
+        if (loaded.isEmpty())
+            return;
+        for (int slash = key.indexOf('/'); slash >= 0; slash = key.indexOf('/', slash + 1))
+            reopen(loaded, key.substring(0, slash + 1));
+        if (!key.endsWith("/"))
+            reopen(loaded, key);
+    }
+
+    private void reopen(Map<String, Tombstone> loaded, String key) {
+        Tombstone t = loaded.get(key);
+        if (t == null || t.isReopened())
+            return;
+        Tombstone saved = metadataStore.update(COLLECTION, key, TYPE,
+                current -> current == null ? null : current.toBuilder().reopened(true).build());
+        if (saved != null)
+            loaded.put(key, saved);
+        else
+            loaded.remove(key);
+    }
+
+    /**
+     * Drops a tombstone whose objects have been purged.
+     */
+    public void forget(String key) {
+        metadataStore.update(COLLECTION, key, TYPE, current -> null);
+        load().remove(key);
+    }
+
+    /**
+     * Re-reads the collection, picking up tombstones written by other
+     * replicas.
+     */
+    public void reload() {
+        cache.invalidate(CACHE_KEY);
+        load();
+    }
+
+    /**
+     * Whether an object last modified at lastModified was trashed by t.
+     */
+    public static boolean covers(Tombstone t, Instant lastModified) {
+        if (t == null)
+            return false;
+        if (lastModified == null)
+            return true;
+        Instant cutoff = Instant.parse(t.getTrashedAt());
+        Instant modified = lastModified.truncatedTo(ChronoUnit.SECONDS);
+        // Once something has been written since, an object from the
+        // tombstone's own second may be that write, so it is shown
+        return t.isReopened() ? modified.isBefore(cutoff) : !modified.isAfter(cutoff);
+    }
+
+    private Map<String, Tombstone> load() {
+        return cache.get(CACHE_KEY, TTL, this::read);
+    }
+
+    private Map<String, Tombstone> read() {
+        Map<String, Tombstone> data = metadataStore.loadAll(COLLECTION, TYPE);
+        Map<String, Tombstone> loaded = new ConcurrentHashMap<>();
+        if (data != null)
+            loaded.putAll(data);
+        log.debug("[TombstoneStore] Loaded {} tombstones", loaded.size());
+        return loaded;
+    }
+}
@@ -0,0 +1,173 @@
+package com.jarvis.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+import software.amazon.awssdk.transfer.s3.model.CopyRequest;
+import software.amazon.awssdk.transfer.s3.model.DownloadRequest;
+import software.amazon.awssdk.transfer.s3.model.UploadRequest;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Routes large single-object transfers through the CRT-backed
+ * S3TransferManager, which splits them into parts moved over parallel
+ * connections. Objects below app.transfer.threshold-mb stay on the plain
+ * synchronous client, where one request is cheaper than a multipart setup.
+ */
+@Component
+@Slf4j
+public class TransferEngine {
+
+    private final S3Client s3Client;
+    private final S3AsyncClient s3AsyncClient;
+    private final S3TransferManager transferManager;
+    private final ExecutorService ioExecutor;
+
+    @Value("${aws.s3.bucket-name}")
+    private String bucketName;
+
+    @Value("${app.transfer.threshold-mb:64}")
+    private long thresholdMb;
+
+    public TransferEngine(S3Client s3Client, S3AsyncClient s3AsyncClient, S3TransferManager transferManager,
+            @Qualifier("s3IoExecutor") ExecutorService ioExecutor) {
+        this.s3Client = s3Client;
+        this.s3AsyncClient = s3AsyncClient;
+        this.transferManager = transferManager;
+        this.ioExecutor = ioExecutor;
+    }
+
+    public boolean isLarge(long size) {
+        return size >= thresholdMb * 1024 * 1024;
+    }
+
+    /**
+     * Uploads a stream of known length in parallel parts. The stream is read
+     * on the I/O pool and is not closed.
+     */
+    public void upload(String key, String contentType, InputStream in, long contentLength) {
+        UploadRequest request = UploadRequest.builder()
+                .putObjectRequest(PutObjectRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .contentType(contentType)
+                        .build())
+                .requestBody(AsyncRequestBody.fromInputStream(in, contentLength, ioExecutor))
+                .build();
+        await(transferManager.upload(request).completionFuture());
+        log.info("[TransferEngine] Uploaded {} ({} bytes)", key, contentLength);
+    }
+
+    public void copy(String sourceKey, String destinationKey, long size) {
+        CopyObjectRequest copyReq = copyRequest(sourceKey, destinationKey);
+
+        if (!isLarge(size)) {
+            s3Client.copyObject(copyReq);
+            return;
+        }
+        // Multipart copy; CopyObject alone also fails above 5 GB
+        await(transferManager.copy(CopyRequest.builder().copyObjectRequest(copyReq).build()).completionFuture());
+    }
+
+    /**
+     * Non-blocking form of copy, on the async client, for callers that keep
+     * many copies in flight at once.
+     */
+    public CompletableFuture<Void> copyAsync(String sourceKey, String destinationKey, long size) {
+        CopyObjectRequest copyReq = copyRequest(sourceKey, destinationKey);
+
+        if (!isLarge(size))
+            return s3AsyncClient.copyObject(copyReq).thenApply(res -> null);
+        return transferManager.copy(CopyRequest.builder().copyObjectRequest(copyReq).build())
+                .completionFuture()
+                .thenApply(res -> null);
+    }
+
+    private CopyObjectRequest copyRequest(String sourceKey, String destinationKey) {
+        return CopyObjectRequest.builder()
+                .sourceBucket(bucketName)
+                .sourceKey(sourceKey)
+                .destinationBucket(bucketName)
+                .destinationKey(destinationKey)
+                .build();
+    }
+
+    /**
+     * Opens an object for reading. Large objects are fetched as parallel
+     * ranged GETs and reassembled in order behind the returned stream.
+     * Closing the stream before the end aborts the request rather than
+     * draining the rest of the object.
+     */
+    public InputStream download(String key, long size) {
+        GetObjectRequest getReq = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build();
+
+        if (!isLarge(size))
+            return abortOnEarlyClose(s3Client.getObject(getReq));
+
+        return abortOnEarlyClose(await(transferManager.download(DownloadRequest.builder()
+                .getObjectRequest(getReq)
+                .responseTransformer(AsyncResponseTransformer.toBlockingInputStream())
+                .build()).completionFuture()).result());
+    }
+
+    /**
+     * The HTTP client drains an unfinished response on close so it can reuse
+     * the connection; for an abandoned multi-GB object that means reading it
+     * all. Aborting drops the connection instead.
+     */
+    static InputStream abortOnEarlyClose(ResponseInputStream<?> response) {
+        return new FilterInputStream(response) {
+            private boolean eof;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                eof |= b < 0;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                eof |= n < 0;
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (!eof)
+                    response.abort();
+                super.close();
+            }
+        };
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+}
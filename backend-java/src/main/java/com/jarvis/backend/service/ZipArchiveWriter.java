@@ -0,0 +1,495 @@
+package com.jarvis.backend.service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a ZIP archive to a stream, switching to ZIP64 records for entries,
+ * offsets or entry counts beyond the classic 32/16-bit limits.
+ *
+ * Entries are prepared before they are written: prepare() picks STORED for
+ * content that is already compressed (by extension or magic bytes) and
+ * DEFLATED otherwise, and computes the CRC and sizes up front. It touches no
+ * writer state, so callers run it for several entries at once on other
+ * threads and only the final copy happens on the writing thread. Deferred
+ * content is the exception: it is read and compressed while being written,
+ * with the CRC and sizes in a trailing data descriptor.
+ */
+public class ZipArchiveWriter implements ArchiveWriter<ZipArchiveWriter.Entry> {
+
+    private static final int LOCAL_HEADER_SIG = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIG = 0x08074b50;
+    private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+    private static final int ZIP64_END_SIG = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    private static final int END_SIG = 0x06054b50;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    private static final int FLAG_UTF8 = 1 << 11;
+    private static final int VERSION_DEFAULT = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    private static final long MAX_32 = 0xFFFFFFFFL;
+    private static final int MAX_16 = 0xFFFF;
+    // Deflate can grow incompressible input slightly; streamed entries this
+    // close to 4 GB get ZIP64 sizes in case the output crosses it
+    private static final long STREAMED_ZIP64_THRESHOLD = MAX_32 - (64L << 20);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int SNIFF_LENGTH = 12;
+
+    private static final Set<String> COMPRESSED_EXTENSIONS = Set.of(
+            "jpg", "jpeg", "png", "gif", "webp", "heic", "heif", "avif",
+            "mp4", "m4v", "mov", "mkv", "webm", "avi", "wmv", "flv",
+            "mp3", "m4a", "aac", "ogg", "oga", "opus", "flac", "wma",
+            "zip", "gz", "tgz", "bz2", "xz", "zst", "7z", "rar", "lz4", "br",
+            "jar", "war", "apk", "docx", "xlsx", "pptx", "odt", "ods", "odp", "epub",
+            "woff", "woff2");
+
+    private final CountingOutputStream out;
+    private final int level;
+    private final List<CentralEntry> written = new ArrayList<>();
+
+    /**
+     * @param level Deflater level, 0 (store everything) to 9
+     */
+    public ZipArchiveWriter(OutputStream out, int level) {
+        this.out = new CountingOutputStream(out);
+        this.level = level;
+    }
+
+    /**
+     * An entry ready to be written. Closing releases its payload.
+     */
+    public static final class Entry implements Closeable {
+        final String name;
+        final Instant modified;
+        final ObjectPrefetcher.Content payload; // bytes exactly as they go in the archive
+        final int method;
+        final long crc;
+        final long size;
+
+        Entry(String name, Instant modified, ObjectPrefetcher.Content payload, int method, long crc, long size) {
+            this.name = name;
+            this.modified = modified;
+            this.payload = payload;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+        }
+
+        @Override
+        public void close() {
+            payload.close();
+        }
+    }
+
+    /**
+     * Compresses the content (or not) and computes its CRC. Thread-safe; takes
+     * ownership of the content.
+     */
+    @Override
+    public Entry prepare(String name, Instant modified, ObjectPrefetcher.Content content) throws IOException {
+        if (content.isDeferred())
+            return new Entry(name, modified, content, -1, 0, content.length());
+
+        boolean store = level == Deflater.NO_COMPRESSION || content.length() == 0
+                || isCompressed(name, sniff(content));
+        if (store)
+            return new Entry(name, modified, content, STORED, crcOf(content), content.length());
+
+        return content.data() != null
+                ? deflateInMemory(name, modified, content)
+                : deflateToFile(name, modified, content);
+    }
+
+    @Override
+    public void write(Entry entry) throws IOException {
+        if (entry.method < 0) {
+            writeStreamed(entry);
+            return;
+        }
+
+        long compressedSize = entry.payload.length();
+        boolean zip64 = entry.size >= MAX_32 || compressedSize >= MAX_32;
+        CentralEntry central = new CentralEntry(entry, out.count, FLAG_UTF8, zip64);
+        central.crc = entry.crc;
+        central.compressedSize = compressedSize;
+        writeLocalHeader(central, zip64 ? new long[] { entry.size, compressedSize } : null);
+
+        try (InputStream in = entry.payload.open()) {
+            in.transferTo(out);
+        }
+        written.add(central);
+    }
+
+    /**
+     * Writes the central directory. Does not close the underlying stream.
+     */
+    @Override
+    public void finish() throws IOException {
+        long cdOffset = out.count;
+        for (CentralEntry entry : written)
+            writeCentralHeader(entry);
+        long cdSize = out.count - cdOffset;
+
+        int count = written.size();
+        if (count >= MAX_16 || cdOffset >= MAX_32 || cdSize >= MAX_32) {
+            long zip64EndOffset = out.count;
+            ByteBuffer end64 = buffer(56)
+                    .putInt(ZIP64_END_SIG)
+                    .putLong(44) // size of the remaining record
+                    .putShort((short) VERSION_ZIP64)
+                    .putShort((short) VERSION_ZIP64)
+                    .putInt(0)
+                    .putInt(0)
+                    .putLong(count)
+                    .putLong(count)
+                    .putLong(cdSize)
+                    .putLong(cdOffset);
+            out.write(end64.array());
+
+            ByteBuffer locator = buffer(20)
+                    .putInt(ZIP64_LOCATOR_SIG)
+                    .putInt(0)
+                    .putLong(zip64EndOffset)
+                    .putInt(1);
+            out.write(locator.array());
+        }
+
+        ByteBuffer end = buffer(22)
+                .putInt(END_SIG)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) Math.min(count, MAX_16))
+                .putShort((short) Math.min(count, MAX_16))
+                .putInt((int) Math.min(cdSize, MAX_32))
+                .putInt((int) Math.min(cdOffset, MAX_32))
+                .putShort((short) 0);
+        out.write(end.array());
+        out.flush();
+    }
+
+    // --- Content detection ---
+
+    static boolean isCompressed(String name, byte[] head) {
+        int dot = name.lastIndexOf('.');
+        if (dot >= 0 && COMPRESSED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT)))
+            return true;
+        return hasCompressedMagic(head);
+    }
+
+    private static boolean hasCompressedMagic(byte[] h) {
+        return startsWith(h, 0xFF, 0xD8, 0xFF) // JPEG
+                || startsWith(h, 0x89, 'P', 'N', 'G') // PNG
+                || startsWith(h, 'G', 'I', 'F', '8') // GIF
+                || startsWith(h, 'P', 'K', 0x03, 0x04) // ZIP and its derivatives
+                || startsWith(h, 0x1F, 0x8B) // gzip
+                || startsWith(h, 'B', 'Z', 'h') // bzip2
+                || startsWith(h, 0xFD, '7', 'z', 'X', 'Z') // xz
+                || startsWith(h, 0x28, 0xB5, 0x2F, 0xFD) // zstd
+                || startsWith(h, '7', 'z', 0xBC, 0xAF) // 7-Zip
+                || startsWith(h, 'R', 'a', 'r', '!') // RAR
+                || startsWith(h, 'O', 'g', 'g', 'S') // Ogg
+                || startsWith(h, 'f', 'L', 'a', 'C') // FLAC
+                || startsWith(h, 'I', 'D', '3') // MP3
+                || startsWith(h, 0x1A, 0x45, 0xDF, 0xA3) // Matroska / WebM
+                || (h.length >= 8 && h[4] == 'f' && h[5] == 't' && h[6] == 'y' && h[7] == 'p') // MP4, MOV, HEIC
+                || (startsWith(h, 'R', 'I', 'F', 'F') && h.length >= 12
+                        && h[8] == 'W' && h[9] == 'E' && h[10] == 'B' && h[11] == 'P');
+    }
+
+    private static boolean startsWith(byte[] head, int... magic) {
+        if (head.length < magic.length)
+            return false;
+        for (int i = 0; i < magic.length; i++) {
+            if ((head[i] & 0xFF) != magic[i])
+                return false;
+        }
+        return true;
+    }
+
+    private static byte[] sniff(ObjectPrefetcher.Content content) throws IOException {
+        if (content.data() != null)
+            return Arrays.copyOf(content.data(), (int) Math.min(SNIFF_LENGTH, content.length()));
+        try (InputStream in = content.open()) {
+            return in.readNBytes(SNIFF_LENGTH);
+        }
+    }
+
+    // --- Preparation ---
+
+    private static long crcOf(ObjectPrefetcher.Content content) throws IOException {
+        CRC32 crc = new CRC32();
+        if (content.data() != null) {
+            crc.update(content.data());
+            return crc.getValue();
+        }
+        try (InputStream in = content.open()) {
+            byte[] buf = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buf)) > 0)
+                crc.update(buf, 0, n);
+        }
+        return crc.getValue();
+    }
+
+    private Entry deflateInMemory(String name, Instant modified, ObjectPrefetcher.Content content) {
+        byte[] data = content.data();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 2 + 64);
+            byte[] buf = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                compressed.write(buf, 0, n);
+                if (compressed.size() >= data.length) // not worth it
+                    return new Entry(name, modified, content, STORED, crc.getValue(), data.length);
+            }
+            return new Entry(name, modified, ObjectPrefetcher.Content.of(compressed.toByteArray()),
+                    DEFLATED, crc.getValue(), data.length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private Entry deflateToFile(String name, Instant modified, ObjectPrefetcher.Content content) throws IOException {
+        Path file = Files.createTempFile("zip-", ".tmp");
+        CRC32 crc = new CRC32();
+        Deflater deflater = new Deflater(level, true);
+        try {
+            try (InputStream in = content.open();
+                    DeflaterOutputStream dos = new DeflaterOutputStream(Files.newOutputStream(file), deflater, BUFFER_SIZE)) {
+                byte[] buf = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    crc.update(buf, 0, n);
+                    dos.write(buf, 0, n);
+                }
+            }
+            if (Files.size(file) >= content.length()) {
+                ObjectPrefetcher.deleteQuietly(file);
+                return new Entry(name, modified, content, STORED, crc.getValue(), content.length());
+            }
+            long size = content.length();
+            content.close();
+            return new Entry(name, modified, ObjectPrefetcher.Content.of(file), DEFLATED, crc.getValue(), size);
+        } catch (IOException | RuntimeException e) {
+            ObjectPrefetcher.deleteQuietly(file);
+            throw e;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // --- Streamed entries ---
+
+    private void writeStreamed(Entry entry) throws IOException {
+        try (InputStream raw = entry.payload.open()) {
+            BufferedInputStream in = new BufferedInputStream(raw, BUFFER_SIZE);
+            in.mark(SNIFF_LENGTH);
+            byte[] head = in.readNBytes(SNIFF_LENGTH);
+            in.reset();
+
+            boolean deflate = level != Deflater.NO_COMPRESSION && !isCompressed(entry.name, head);
+            boolean zip64 = entry.size >= STREAMED_ZIP64_THRESHOLD;
+            CentralEntry central = new CentralEntry(entry, out.count, FLAG_UTF8 | FLAG_DATA_DESCRIPTOR, zip64);
+            central.method = deflate ? DEFLATED : STORED;
+            writeLocalHeader(central, zip64 ? new long[] { 0, 0 } : null);
+
+            CRC32 crc = new CRC32();
+            long size = 0;
+            long dataStart = out.count;
+            byte[] buf = new byte[BUFFER_SIZE];
+            int n;
+            if (deflate) {
+                Deflater deflater = new Deflater(level, true);
+                try {
+                    DeflaterOutputStream dos = new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+                    while ((n = in.read(buf)) > 0) {
+                        crc.update(buf, 0, n);
+                        dos.write(buf, 0, n);
+                        size += n;
+                    }
+                    dos.finish(); // not close(): the archive stream stays open
+                } finally {
+                    deflater.end();
+                }
+            } else {
+                while ((n = in.read(buf)) > 0) {
+                    crc.update(buf, 0, n);
+                    out.write(buf, 0, n);
+                    size += n;
+                }
+            }
+
+            central.crc = crc.getValue();
+            central.size = size;
+            central.compressedSize = out.count - dataStart;
+            if (!zip64 && (size >= MAX_32 || central.compressedSize >= MAX_32))
+                throw new IOException("Entry " + entry.name + " grew past the ZIP64 threshold while streaming");
+
+            ByteBuffer descriptor = buffer(zip64 ? 24 : 16)
+                    .putInt(DATA_DESCRIPTOR_SIG)
+                    .putInt((int) central.crc);
+            if (zip64)
+                descriptor.putLong(central.compressedSize).putLong(size);
+            else
+                descriptor.putInt((int) central.compressedSize).putInt((int) size);
+            out.write(descriptor.array());
+            written.add(central);
+        }
+    }
+
+    // --- Records ---
+
+    private static final class CentralEntry {
+        final byte[] name;
+        final long dosTime;
+        final long offset;
+        final int flags;
+        final boolean zip64;
+        int method;
+        long crc;
+        long size;
+        long compressedSize;
+
+        CentralEntry(Entry entry, long offset, int flags, boolean zip64) {
+            this.name = entry.name.getBytes(StandardCharsets.UTF_8);
+            this.dosTime = dosTime(entry.modified);
+            this.offset = offset;
+            this.flags = flags;
+            this.zip64 = zip64;
+            this.method = entry.method;
+            this.size = entry.size;
+        }
+    }
+
+    private void writeLocalHeader(CentralEntry e, long[] zip64Sizes) throws IOException {
+        boolean zip64 = zip64Sizes != null;
+        boolean descriptor = (e.flags & FLAG_DATA_DESCRIPTOR) != 0;
+        int extraLength = zip64 ? 20 : 0;
+        ByteBuffer header = buffer(30 + e.name.length + extraLength)
+                .putInt(LOCAL_HEADER_SIG)
+                .putShort((short) (zip64 ? VERSION_ZIP64 : VERSION_DEFAULT))
+                .putShort((short) e.flags)
+                .putShort((short) e.method)
+                .putInt((int) e.dosTime)
+                .putInt(descriptor ? 0 : (int) e.crc)
+                .putInt(zip64 ? (int) MAX_32 : descriptor ? 0 : (int) e.compressedSize)
+                .putInt(zip64 ? (int) MAX_32 : descriptor ? 0 : (int) e.size)
+                .putShort((short) e.name.length)
+                .putShort((short) extraLength)
+                .put(e.name);
+        if (zip64) {
+            header.putShort((short) ZIP64_EXTRA_ID)
+                    .putShort((short) 16)
+                    .putLong(zip64Sizes[0])
+                    .putLong(zip64Sizes[1]);
+        }
+        out.write(header.array());
+    }
+
+    private void writeCentralHeader(CentralEntry e) throws IOException {
+        boolean bigSize = e.size >= MAX_32;
+        boolean bigCompressed = e.compressedSize >= MAX_32;
+        boolean bigOffset = e.offset >= MAX_32;
+        int extraData = (bigSize ? 8 : 0) + (bigCompressed ? 8 : 0) + (bigOffset ? 8 : 0);
+        int extraLength = extraData > 0 ? 4 + extraData : 0;
+        boolean zip64 = e.zip64 || extraLength > 0;
+
+        ByteBuffer header = buffer(46 + e.name.length + extraLength)
+                .putInt(CENTRAL_HEADER_SIG)
+                .putShort((short) VERSION_ZIP64) // made by
+                .putShort((short) (zip64 ? VERSION_ZIP64 : VERSION_DEFAULT))
+                .putShort((short) e.flags)
+                .putShort((short) e.method)
+                .putInt((int) e.dosTime)
+                .putInt((int) e.crc)
+                .putInt(bigCompressed ? (int) MAX_32 : (int) e.compressedSize)
+                .putInt(bigSize ? (int) MAX_32 : (int) e.size)
+                .putShort((short) e.name.length)
+                .putShort((short) extraLength)
+                .putShort((short) 0) // comment
+                .putShort((short) 0) // disk
+                .putShort((short) 0) // internal attributes
+                .putInt(0) // external attributes
+                .putInt(bigOffset ? (int) MAX_32 : (int) e.offset)
+                .put(e.name);
+        if (extraLength > 0) {
+            header.putShort((short) ZIP64_EXTRA_ID).putShort((short) extraData);
+            if (bigSize)
+                header.putLong(e.size);
+            if (bigCompressed)
+                header.putLong(e.compressedSize);
+            if (bigOffset)
+                header.putLong(e.offset);
+        }
+        out.write(header.array());
+    }
+
+    private static ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long dosTime(Instant modified) {
+        LocalDateTime t = LocalDateTime.ofInstant(modified != null ? modified : Instant.now(), ZoneId.systemDefault());
+        if (t.getYear() < 1980)
+            return (1 << 21) | (1 << 16); // 1980-01-01 00:00
+        return ((long) Math.min(t.getYear() - 1980, 127) << 25)
+                | ((long) t.getMonthValue() << 21)
+                | ((long) t.getDayOfMonth() << 16)
+                | ((long) t.getHour() << 11)
+                | ((long) t.getMinute() << 5)
+                | ((long) t.getSecond() >> 1);
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.jarvis.backend.service;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BucketKeyIndexTest {
+
+    private static final Instant MODIFIED = Instant.parse("2024-03-01T12:00:00Z");
+    private static final String[] SEGMENTS = { "a", "b", "a-b", "a.b", "docs", "Zeta", "é", "ü", "中文", "😀", "x😀" };
+
+    @Test
+    void ordersKeysByUtf8Bytes() {
+        List<String> keys = new ArrayList<>(Arrays.asList("a", "a/", "a-", "é", "中", "😀", "￿", "Z", ""));
+        keys.sort(BucketKeyIndex.KEY_ORDER);
+
+        List<String> byBytes = new ArrayList<>(keys);
+        byBytes.sort((x, y) -> Arrays.compareUnsigned(x.getBytes(StandardCharsets.UTF_8),
+                y.getBytes(StandardCharsets.UTF_8)));
+        assertThat(keys).isEqualTo(byBytes);
+    }
+
+    @Test
+    void matchesTreeMapAfterBuildAndMutations() {
+        Random random = new Random(42);
+        TreeMap<String, Long> expected = new TreeMap<>(BucketKeyIndex.KEY_ORDER);
+        BucketKeyIndex index = new BucketKeyIndex();
+
+        // Scanned out of order, with repeats, so the builder has to merge runs
+        List<String> scanned = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++)
+            scanned.add(randomKey(random));
+        Collections.shuffle(scanned, random);
+        BucketKeyIndex.Builder builder = index.newBuilder();
+        for (String key : scanned) {
+            long size = key.length();
+            builder.add(key, size, MODIFIED);
+            expected.put(key, size);
+        }
+        index.install(builder);
+        assertMatches(index, expected, random);
+
+        // Enough mutations to fold the overlay into a new base at least once
+        for (int i = 0; i < 10_000; i++) {
+            String key = randomKey(random);
+            if (random.nextInt(3) == 0) {
+                index.remove(key);
+                expected.remove(key);
+            } else {
+                long size = random.nextInt(1_000_000);
+                index.put(key, size, MODIFIED);
+                expected.put(key, size);
+            }
+            if (i % 2_500 == 0)
+                assertMatches(index, expected, random);
+        }
+        assertMatches(index, expected, random);
+    }
+
+    @Test
+    void keepsWritesMadeWhileCompacting() throws Exception {
+        BucketKeyIndex index = new BucketKeyIndex();
+        BucketKeyIndex.Builder builder = index.newBuilder();
+        for (int i = 0; i < 100_000; i++)
+            builder.add(String.format("base/%06d", i), i, MODIFIED);
+        index.install(builder);
+
+        // Writers cross the compaction threshold repeatedly while others keep writing
+        int threads = 4, perThread = 20_000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int id = t;
+                writers.add(pool.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        index.put("w" + id + "/" + i, i, MODIFIED);
+                        if (i % 2 == 0)
+                            index.remove(String.format("base/%06d", id * perThread + i));
+                    }
+                }));
+            }
+            for (Future<?> f : writers)
+                f.get();
+        } finally {
+            pool.shutdown();
+        }
+
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < perThread; i++) {
+                assertThat(index.sizeOf("w" + t + "/" + i)).isEqualTo((long) i);
+                S3Object base = index.find(String.format("base/%06d", t * perThread + i));
+                assertThat(base == null).isEqualTo(i % 2 == 0);
+            }
+        }
+        assertThat(listAll(index, "", true, 1000)).hasSize(100_000 + threads * perThread - threads * perThread / 2);
+    }
+
+    @Test
+    void replaysWritesMadeDuringARebuild() {
+        BucketKeyIndex index = new BucketKeyIndex();
+        BucketKeyIndex.Builder builder = index.newBuilder();
+        builder.add("kept.txt", 1, MODIFIED);
+        builder.add("removed.txt", 2, MODIFIED);
+        index.put("added.txt", 3, MODIFIED);
+        index.remove("removed.txt");
+        index.install(builder);
+
+        assertThat(index.sizeOf("kept.txt")).isEqualTo(1L);
+        assertThat(index.sizeOf("added.txt")).isEqualTo(3L);
+        assertThat(index.find("removed.txt")).isNull();
+    }
+
+    private static void assertMatches(BucketKeyIndex index, TreeMap<String, Long> expected, Random random) {
+        for (Map.Entry<String, Long> e : expected.entrySet()) {
+            S3Object found = index.find(e.getKey());
+            assertThat(found).as(e.getKey()).isNotNull();
+            assertThat(found.size()).isEqualTo(e.getValue());
+        }
+        for (int i = 0; i < 200; i++) {
+            String key = randomKey(random);
+            assertThat(index.find(key) != null).as(key).isEqualTo(expected.containsKey(key));
+        }
+
+        Set<String> prefixes = new TreeSet<>(BucketKeyIndex.KEY_ORDER);
+        prefixes.add("");
+        for (String key : expected.keySet()) {
+            for (int slash = key.indexOf('/'); slash >= 0; slash = key.indexOf('/', slash + 1))
+                prefixes.add(key.substring(0, slash + 1));
+        }
+        int checked = 0;
+        for (String prefix : prefixes) {
+            if (checked++ % 7 != 0 && !prefix.isEmpty())
+                continue;
+            int pageSize = 1 + random.nextInt(50);
+            assertThat(listAll(index, prefix, true, pageSize)).as(prefix)
+                    .isEqualTo(expectedListing(expected, prefix, true));
+            assertThat(listAll(index, prefix, false, pageSize)).as(prefix)
+                    .isEqualTo(expectedListing(expected, prefix, false));
+        }
+    }
+
+    /**
+     * Pages through a listing, returning objects and common prefixes (marked
+     * with a leading "P:") in the order they were returned.
+     */
+    private static List<String> listAll(BucketKeyIndex index, String prefix, boolean recursive, int pageSize) {
+        List<String> listed = new ArrayList<>();
+        String token = null;
+        do {
+            ListObjectsV2Response page = index.list(prefix, recursive, pageSize, token);
+            assertThat(page.keyCount()).isLessThanOrEqualTo(pageSize);
+            List<String> entries = new ArrayList<>();
+            page.contents().forEach(o -> entries.add(o.key()));
+            page.commonPrefixes().stream().map(CommonPrefix::prefix).forEach(p -> entries.add("P:" + p));
+            entries.sort((x, y) -> BucketKeyIndex.KEY_ORDER.compare(strip(x), strip(y)));
+            listed.addAll(entries);
+            token = page.isTruncated() ? page.nextContinuationToken() : null;
+        } while (token != null);
+        return listed;
+    }
+
+    private static List<String> expectedListing(TreeMap<String, Long> expected, String prefix, boolean recursive) {
+        List<String> listing = new ArrayList<>();
+        String lastPrefix = null;
+        for (String key : expected.tailMap(prefix, true).keySet()) {
+            if (!key.startsWith(prefix))
+                break;
+            int slash = recursive ? -1 : key.indexOf('/', prefix.length());
+            if (slash < 0) {
+                listing.add(key);
+                continue;
+            }
+            String common = key.substring(0, slash + 1);
+            if (!common.equals(lastPrefix))
+                listing.add("P:" + common);
+            lastPrefix = common;
+        }
+        return listing;
+    }
+
+    private static String strip(String entry) {
+        return entry.startsWith("P:") ? entry.substring(2) : entry;
+    }
+
+    private static String randomKey(Random random) {
+        StringBuilder key = new StringBuilder();
+        int depth = 1 + random.nextInt(4);
+        for (int i = 0; i < depth; i++) {
+            if (i > 0)
+                key.append('/');
+            key.append(SEGMENTS[random.nextInt(SEGMENTS.length)]);
+        }
+        if (random.nextInt(5) == 0)
+            key.append('/'); // folder marker
+        else
+            key.append(random.nextInt(20));
+        return key.toString();
+    }
+}
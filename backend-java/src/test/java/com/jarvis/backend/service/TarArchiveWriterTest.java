@@ -0,0 +1,128 @@
+package com.jarvis.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TarArchiveWriterTest {
+
+    private static final Instant MODIFIED = Instant.parse("2024-03-01T12:00:00Z");
+    private static final int BLOCK = 512;
+
+    @Test
+    void roundTripsEntries() throws IOException {
+        byte[] random = new byte[70_001];
+        new Random(1).nextBytes(random);
+
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("notes/readme.txt", "hello".getBytes(StandardCharsets.UTF_8));
+        files.put("empty.txt", new byte[0]);
+        files.put("exactly-one-block.bin", Arrays.copyOf(random, BLOCK));
+        files.put("random.bin", random);
+        files.put("deep/" + "nested-folder/".repeat(10) + "file.txt", "long".getBytes(StandardCharsets.UTF_8));
+        files.put("répertoire/données.csv", "a,b\n1,2\n".getBytes(StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TarArchiveWriter writer = new TarArchiveWriter(out);
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            try (TarArchiveWriter.Entry entry = writer.prepare(file.getKey(), MODIFIED,
+                    ObjectPrefetcher.Content.of(file.getValue()))) {
+                writer.write(entry);
+            }
+        }
+        writer.finish();
+
+        byte[] tar = out.toByteArray();
+        assertThat(tar.length % BLOCK).isZero();
+        assertThat(readEntries(tar)).containsExactlyEntriesOf(files);
+    }
+
+    @Test
+    void writesValidUstarHeaders() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TarArchiveWriter writer = new TarArchiveWriter(out);
+        try (TarArchiveWriter.Entry entry = writer.prepare("a.txt", MODIFIED,
+                ObjectPrefetcher.Content.of("abc".getBytes(StandardCharsets.US_ASCII)))) {
+            writer.write(entry);
+        }
+        writer.finish();
+
+        byte[] header = Arrays.copyOf(out.toByteArray(), BLOCK);
+        assertThat(new String(header, 257, 5, StandardCharsets.US_ASCII)).isEqualTo("ustar");
+        assertThat(octal(header, 136, 12)).isEqualTo(MODIFIED.getEpochSecond());
+
+        long checksum = 0;
+        for (int i = 0; i < BLOCK; i++)
+            checksum += i >= 148 && i < 156 ? ' ' : header[i] & 0xFF;
+        assertThat(octal(header, 148, 8)).isEqualTo(checksum);
+    }
+
+    /**
+     * Minimal pax reader: applies "path" and "size" from extended headers to
+     * the entry that follows them.
+     */
+    private static Map<String, byte[]> readEntries(byte[] tar) {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        String paxPath = null;
+        Long paxSize = null;
+        int pos = 0;
+        while (pos + BLOCK <= tar.length) {
+            byte[] header = Arrays.copyOfRange(tar, pos, pos + BLOCK);
+            pos += BLOCK;
+            if (isZero(header))
+                break;
+
+            long size = paxSize != null ? paxSize : octal(header, 124, 12);
+            byte[] data = Arrays.copyOfRange(tar, pos, pos + (int) size);
+            pos += (int) ((size + BLOCK - 1) / BLOCK * BLOCK);
+
+            if (header[156] == 'x') {
+                for (String record : new String(data, StandardCharsets.UTF_8).split("\n")) {
+                    String kv = record.substring(record.indexOf(' ') + 1);
+                    String key = kv.substring(0, kv.indexOf('='));
+                    String value = kv.substring(kv.indexOf('=') + 1);
+                    if (key.equals("path"))
+                        paxPath = value;
+                    else if (key.equals("size"))
+                        paxSize = Long.parseLong(value);
+                }
+                continue;
+            }
+
+            String name = paxPath != null ? paxPath : cString(header, 0, 100);
+            entries.put(name, data);
+            paxPath = null;
+            paxSize = null;
+        }
+        return entries;
+    }
+
+    private static long octal(byte[] header, int offset, int length) {
+        String digits = cString(header, offset, length).trim();
+        return Long.parseLong(digits, 8);
+    }
+
+    private static String cString(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0)
+            end++;
+        return new String(header, offset, end - offset, StandardCharsets.US_ASCII);
+    }
+
+    private static boolean isZero(byte[] block) {
+        for (byte b : block) {
+            if (b != 0)
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,103 @@
+package com.jarvis.backend.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.jarvis.backend.dto.Tombstone;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TombstoneStoreTest {
+
+    // Deliberately far from this machine's clock: only S3's clock may matter
+    private static final Instant S3_NOW = Instant.parse("2020-06-01T08:30:15Z");
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private FakeMetadataStore metadataStore;
+    private TombstoneStore tombstones;
+
+    @BeforeEach
+    void setUp() {
+        RefreshingCache cache = new RefreshingCache(executor);
+        ReflectionTestUtils.setField(cache, "maxEntries", 4096);
+        ReflectionTestUtils.setField(cache, "maxStaleMillis", 60_000L);
+        metadataStore = new FakeMetadataStore();
+        tombstones = new TombstoneStore(metadataStore, cache);
+    }
+
+    @Test
+    void cutoffComesFromS3Clock() {
+        Tombstone t = tombstones.trash("docs/");
+
+        assertThat(t.getTrashedAt()).isEqualTo(S3_NOW.toString());
+        assertThat(tombstones.hides("docs/a.txt", S3_NOW.minusSeconds(60))).isTrue();
+        assertThat(tombstones.hides("docs/a.txt", S3_NOW)).isTrue();
+        assertThat(tombstones.hides("docs/a.txt", S3_NOW.plusSeconds(1))).isFalse();
+        assertThat(tombstones.hides("other/a.txt", S3_NOW)).isFalse();
+    }
+
+    @Test
+    void uploadInTheSameSecondAsTheTrashStaysVisible() {
+        tombstones.trash("docs/");
+        tombstones.noteWrite("docs/new.txt");
+
+        // Listed with S3's whole-second LastModified, equal to the cutoff
+        assertThat(tombstones.hides("docs/new.txt", S3_NOW)).isFalse();
+        assertThat(tombstones.hides("docs/old.txt", S3_NOW.minusSeconds(1))).isTrue();
+        assertThat(tombstones.hides("docs/")).isFalse();
+    }
+
+    @Test
+    void overwriteOfATrashedFileInTheSameSecondStaysVisible() {
+        tombstones.trash("report.pdf");
+        assertThat(tombstones.hides("report.pdf", S3_NOW)).isTrue();
+
+        tombstones.noteWrite("report.pdf");
+        assertThat(tombstones.hides("report.pdf", S3_NOW)).isFalse();
+    }
+
+    @Test
+    void restoreRemovesTheTombstone() {
+        tombstones.trash("docs/");
+        assertThat(tombstones.restore("docs/")).isTrue();
+        assertThat(tombstones.hides("docs/a.txt", S3_NOW.minusSeconds(60))).isFalse();
+        assertThat(metadataStore.data).isEmpty();
+    }
+
+    /**
+     * In-memory stand-in whose clock is S3_NOW.
+     */
+    private static final class FakeMetadataStore extends MetadataStore {
+        final Map<String, Object> data = new HashMap<>();
+
+        FakeMetadataStore() {
+            super(null, null, null);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <V> Map<String, V> loadAll(String collection, TypeReference<Map<String, V>> type) {
+            return data.isEmpty() ? null : new HashMap<>((Map<String, V>) data);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <V> V update(String collection, String key, TypeReference<Map<String, V>> type,
+                BiFunction<V, Instant, V> mutator) {
+            V updated = mutator.apply((V) data.get(key), S3_NOW);
+            if (updated == null)
+                data.remove(key);
+            else
+                data.put(key, updated);
+            return updated;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.jarvis.backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ZipArchiveWriterTest {
+
+    private static final Instant MODIFIED = Instant.parse("2024-03-01T12:00:00Z");
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void roundTripsStoredAndDeflatedEntries() throws IOException {
+        byte[] random = new byte[200_000];
+        new Random(1).nextBytes(random);
+
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("notes/readme.txt", "hello hello hello hello".repeat(500).getBytes(StandardCharsets.UTF_8));
+        files.put("photos/cat.jpg", random);
+        files.put("empty.txt", new byte[0]);
+        files.put("répertoire/données.csv", "a,b\n1,2\n".getBytes(StandardCharsets.UTF_8));
+        files.put("random.bin", random);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ZipArchiveWriter writer = new ZipArchiveWriter(out, Deflater.DEFAULT_COMPRESSION);
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            try (ZipArchiveWriter.Entry entry = writer.prepare(file.getKey(), MODIFIED,
+                    ObjectPrefetcher.Content.of(file.getValue()))) {
+                writer.write(entry);
+            }
+        }
+        writer.finish();
+
+        assertThat(readEntries(out.toByteArray())).containsExactlyEntriesOf(files);
+    }
+
+    @Test
+    void roundTripsFileBackedEntries() throws IOException {
+        byte[] text = "line of text\n".repeat(20_000).getBytes(StandardCharsets.UTF_8);
+        Path file = Files.write(tmp.resolve("spill"), text);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ZipArchiveWriter writer = new ZipArchiveWriter(out, Deflater.BEST_SPEED);
+        try (ZipArchiveWriter.Entry entry = writer.prepare("big.txt", MODIFIED, ObjectPrefetcher.Content.of(file))) {
+            writer.write(entry);
+        }
+        writer.finish();
+
+        assertThat(out.size()).isLessThan(text.length);
+        assertThat(readEntries(out.toByteArray())).containsExactly(Map.entry("big.txt", text));
+    }
+
+    @Test
+    void switchesToZip64PastTheClassicEntryCount() throws IOException {
+        int count = 70_000;
+        Path zip = tmp.resolve("many.zip");
+        try (OutputStream out = Files.newOutputStream(zip)) {
+            ZipArchiveWriter writer = new ZipArchiveWriter(out, Deflater.DEFAULT_COMPRESSION);
+            for (int i = 0; i < count; i++) {
+                byte[] data = ("file " + i).getBytes(StandardCharsets.UTF_8);
+                try (ZipArchiveWriter.Entry entry = writer.prepare("dir/" + i + ".txt", MODIFIED,
+                        ObjectPrefetcher.Content.of(data))) {
+                    writer.write(entry);
+                }
+            }
+            writer.finish();
+        }
+
+        // ZipInputStream walks the local headers; ZipFile reads the ZIP64 end of central directory
+        Map<String, byte[]> entries = readEntries(Files.readAllBytes(zip));
+        assertThat(entries).hasSize(count);
+        assertThat(entries.get("dir/69999.txt")).isEqualTo("file 69999".getBytes(StandardCharsets.UTF_8));
+
+        try (ZipFile file = new ZipFile(zip.toFile())) {
+            assertThat(file.size()).isEqualTo(count);
+            ZipEntry last = file.getEntry("dir/69999.txt");
+            assertThat(last).isNotNull();
+            assertThat(file.getInputStream(last).readAllBytes())
+                    .isEqualTo("file 69999".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void detectsCompressedContentByMagicBytes() {
+        byte[] png = { (byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A };
+        byte[] text = "plain text".getBytes(StandardCharsets.US_ASCII);
+
+        assertThat(ZipArchiveWriter.isCompressed("image", png)).isTrue();
+        assertThat(ZipArchiveWriter.isCompressed("archive.ZIP", text)).isTrue();
+        assertThat(ZipArchiveWriter.isCompressed("notes.txt", text)).isFalse();
+    }
+
+    private static Map<String, byte[]> readEntries(byte[] zip) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip), StandardCharsets.UTF_8)) {
+            for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry())
+                entries.put(entry.getName(), in.readAllBytes());
+        }
+        return entries;
+    }
+}
@@ -12,6 +12,9 @@ import {
 
 import { getFilesFromEvent, isFolderPlaceholder } from "../utils/fileScanner";
 
+const URL_BATCH_SIZE = 1000; // the backend signs at most 10,000 per request
+const CONFIRM_BATCH_SIZE = 1000;
+
 export default function UploadArtifact({
   onUploadComplete,
   initialFiles,
@@ -23,6 +26,7 @@ export default function UploadArtifact({
   const [fileProgress, setFileProgress] = useState({}); // { index: progress }
   const [fileStatuses, setFileStatuses] = useState({}); // { index: 'pending' | 'uploading' | 'success' | 'error' | 'cancelled' }
   const [overallProgress, setOverallProgress] = useState(0);
+  const [confirmed, setConfirmed] = useState(false); // finished uploads reported to the backend
 
   const activeXhrs = useRef({}); // { index: XHR }
 
@@ -105,31 +109,20 @@ export default function UploadArtifact({
     }
   };
 
-  const uploadFile = async (file, index) => {
-    try {
-      setFileStatuses((prev) => ({ ...prev, [index]: "uploading" }));
-
-      const relativePath = file.webkitRelativePath || file.name;
-
-      // Fix potential path duplication:
-      // If currentPath is "temp" and relativePath starts with "temp/", strip it to avoid "temp/temp/file.txt"
-      const cleanedPath =
-        currentPath && relativePath.startsWith(`${currentPath}/`)
-          ? relativePath.slice(currentPath.length + 1)
-          : relativePath;
+  // Path of the file below currentPath
+  const getRelativePath = (file) => {
+    const relativePath = file.webkitRelativePath || file.name;
 
-      const key = currentPath
-        ? `${currentPath.replace(/\/$/, "")}/${cleanedPath}`
-        : cleanedPath;
-
-      console.log(`Uploading file: ${file.name}, Key: ${key}`);
-
-      const urlResponse = await api.post("/api/s3/upload-url", {
-        fileName: key,
-        contentType: file.type || "application/octet-stream",
-      });
+    // Fix potential path duplication:
+    // If currentPath is "temp" and relativePath starts with "temp/", strip it to avoid "temp/temp/file.txt"
+    return currentPath && relativePath.startsWith(`${currentPath}/`)
+      ? relativePath.slice(currentPath.length + 1)
+      : relativePath;
+  };
 
-      const { url } = urlResponse.data.data;
+  const uploadFile = async (file, index, url) => {
+    try {
+      setFileStatuses((prev) => ({ ...prev, [index]: "uploading" }));
 
       return new Promise((resolve, reject) => {
         const xhr = new XMLHttpRequest();
@@ -155,7 +148,7 @@ export default function UploadArtifact({
           if (xhr.status === 200 || xhr.status === 204) {
             setFileProgress((prev) => ({ ...prev, [index]: 100 }));
             setFileStatuses((prev) => ({ ...prev, [index]: "success" }));
-            resolve();
+            resolve(true);
           } else {
             setFileStatuses((prev) => ({ ...prev, [index]: "error" }));
             reject(new Error(`Failed to upload ${file.name}`));
@@ -208,10 +201,12 @@ export default function UploadArtifact({
     const avgProgress = Math.round(totalProgress / files.length);
     setOverallProgress(avgProgress);
 
-    // Check for completion
-    const isDone = files.every((_, idx) =>
-      ["success", "error", "cancelled"].includes(fileStatuses[idx])
-    );
+    // Check for completion; the listing refresh waits until the uploads are confirmed
+    const isDone =
+      confirmed &&
+      files.every((_, idx) =>
+        ["success", "error", "cancelled"].includes(fileStatuses[idx])
+      );
 
     if (isDone) {
       setTimeout(() => {
@@ -223,7 +218,19 @@ export default function UploadArtifact({
         }, 1500);
       }, 500);
     }
-  }, [fileProgress, fileStatuses, status, files.length, onUploadComplete]);
+  }, [fileProgress, fileStatuses, status, files.length, onUploadComplete, confirmed]);
+
+  // Tell the backend which presigned PUTs landed, so listings show them at once
+  const confirmUploads = async (keys) => {
+    for (let i = 0; i < keys.length; i += CONFIRM_BATCH_SIZE) {
+      try {
+        await api.post("/api/s3/upload-complete", keys.slice(i, i + CONFIRM_BATCH_SIZE));
+      } catch (error) {
+        // Not fatal: the next reconcile picks the files up
+        console.error("Error confirming uploads:", error);
+      }
+    }
+  };
 
   const handleUpload = async () => {
     if (files.length === 0) return;
@@ -232,23 +239,63 @@ export default function UploadArtifact({
       setStatus("uploading");
       setFileProgress({});
       setOverallProgress(0);
+      setConfirmed(false);
       activeXhrs.current = {};
 
-      const uploadPromises = files.map((file, index) => {
-        if (isFolderPlaceholder(file)) {
-          console.warn("Skipping folder placeholder:", file.name);
-          setFileStatuses((prev) => ({ ...prev, [index]: "success" }));
-          return Promise.resolve();
+      const pending = files
+        .map((file, index) => ({ file, index }))
+        .filter(({ file, index }) => {
+          if (isFolderPlaceholder(file)) {
+            console.warn("Skipping folder placeholder:", file.name);
+            setFileStatuses((prev) => ({ ...prev, [index]: "success" }));
+            return false;
+          }
+          return true;
+        });
+
+      // Each request signs a batch of files and creates the folders they go in
+      const urls = [];
+      for (let i = 0; i < pending.length; i += URL_BATCH_SIZE) {
+        const batch = pending.slice(i, i + URL_BATCH_SIZE);
+        try {
+          const urlResponse = await api.post("/api/s3/upload-urls", {
+            prefix: currentPath ? currentPath.replace(/\/$/, "") : "",
+            files: batch.map(({ file }) => ({
+              relativePath: getRelativePath(file),
+              contentType: file.type || "application/octet-stream",
+              size: file.size,
+            })),
+          });
+          urls.push(...urlResponse.data.data.urls);
+        } catch (error) {
+          console.error("Error requesting upload URLs:", error);
+          batch.forEach(({ index }) =>
+            setFileStatuses((prev) => ({ ...prev, [index]: "error" }))
+          );
+          urls.push(...batch.map(() => null));
         }
+      }
 
-        return uploadFile(file, index);
-      });
+      const signed = pending
+        .map((entry, i) => ({ ...entry, signedUrl: urls[i] }))
+        .filter(({ signedUrl }) => signedUrl);
+
+      const uploadPromises = signed.map(({ file, index, signedUrl }) =>
+        uploadFile(file, index, signedUrl.url)
+      );
 
-      await Promise.all(uploadPromises);
+      const results = await Promise.allSettled(uploadPromises);
+      await confirmUploads(
+        signed
+          .filter((_, i) => results[i].status === "fulfilled" && results[i].value === true)
+          .map(({ signedUrl }) => signedUrl.key)
+      );
     } catch (error) {
       console.error("One or more uploads failed:", error);
       // We don't set status "error" here immediately because the useEffect
       // will handle the final state once all promises resolve/reject.
+    } finally {
+      setConfirmed(true);
     }
   };
 
@@ -149,6 +149,39 @@ const FileList = ({
     }
   };
 
+  const handleBulkDownload = () => {
+    if (selectedKeys.length === 0) return;
+    // One archive for the whole selection instead of a request per file. A plain
+    // form post lets the browser save the stream natively instead of buffering the
+    // whole archive as a blob; the hidden frame keeps an error page off screen.
+    let frame = document.getElementById("bulk-download-frame");
+    if (!frame) {
+      frame = document.createElement("iframe");
+      frame.id = "bulk-download-frame";
+      frame.name = "bulk-download-frame";
+      frame.style.display = "none";
+      document.body.appendChild(frame);
+    }
+    const form = document.createElement("form");
+    form.method = "POST";
+    form.action = `${api.defaults.baseURL || ""}/api/s3/download-archive`;
+    form.target = frame.name;
+    const fields = [
+      ["name", currentPath ? currentPath.split("/").pop() : "download"],
+      ...selectedKeys.map((key) => ["keys", key]),
+    ];
+    fields.forEach(([name, value]) => {
+      const input = document.createElement("input");
+      input.type = "hidden";
+      input.name = name;
+      input.value = value;
+      form.appendChild(input);
+    });
+    document.body.appendChild(form);
+    form.submit();
+    document.body.removeChild(form);
+  };
+
   const toggleStar = async (e, key) => {
     e.stopPropagation();
     try {
@@ -189,6 +222,11 @@ const FileList = ({
     fetchItems(true);
   }, [refreshTrigger, currentPath, viewType]);
 
+  // A selection belongs to the folder or view it was made in
+  useEffect(() => {
+    setSelectedKeys([]);
+  }, [currentPath, viewType]);
+
   const fetchItems = async (reset = false, direction = "none") => {
     try {
       setLoading(true);
@@ -229,6 +267,7 @@ const FileList = ({
         continuationToken: token || undefined,
         recursive: isSpecialView ? "true" : "false",
         viewType: viewType,
+        withUrls: "true",
       };
 
       const response = await api.get("/api/s3/list", { params });
@@ -287,14 +326,19 @@ const FileList = ({
       // But we need the URL first.
       // Or we pass the KEY to the modal and let it fetch? No, modal expects file:{url, name}.
       // So fetch URL here.
-      const response = await api.get("/api/s3/file-url", {
-        params: { key: item.key },
-      });
+      // Listing pages come with signed URLs; fall back for items that lack one
+      let url = item.url;
+      if (!url) {
+        const response = await api.get("/api/s3/file-url", {
+          params: { key: item.key },
+        });
+        url = response.data.data.url;
+      }
       setPreviewModal({
         isOpen: true,
         file: {
           ...item,
-          url: response.data.data.url,
+          url,
         },
       });
     } catch (err) {
@@ -542,7 +586,7 @@ const FileList = ({
             </DropdownMenu>
           )}
 
-          {viewType === "trash" && filteredItems.length > 0 && (
+          {filteredItems.length > 0 && (
             <div style={{ display: "flex", gap: "8px" }}>
                <Button
                 variant="outline"
@@ -552,7 +596,18 @@ const FileList = ({
               >
                 {selectedKeys.length === filteredItems.length ? "Deselect All" : "Select All"}
               </Button>
-              {selectedKeys.length > 0 && (
+              {viewType !== "trash" && selectedKeys.length > 0 && (
+                <Button
+                  variant="outline"
+                  size="sm"
+                  onClick={handleBulkDownload}
+                  className="h-10 px-4 rounded-xl border-slate-200 text-slate-500 font-semibold hover:bg-slate-50"
+                >
+                  <FaDownload className="mr-2" size={12} />
+                  Download ({selectedKeys.length})
+                </Button>
+              )}
+              {viewType === "trash" && selectedKeys.length > 0 && (
                  <Button
                   variant="destructive"
                   size="sm"
@@ -683,16 +738,14 @@ const FileList = ({
             >
               <thead>
                 <tr style={{ borderBottom: "1px solid var(--border)" }}>
-                   {viewType === "trash" && (
-                    <th style={{ padding: "16px 24px", width: "40px" }}>
-                      <input 
-                        type="checkbox" 
-                        checked={selectedKeys.length === filteredItems.length && filteredItems.length > 0}
-                        onChange={() => handleSelectAll(filteredItems)}
-                        className="w-4 h-4 accent-[#1b3764] rounded cursor-pointer"
-                      />
-                    </th>
-                  )}
+                   <th style={{ padding: "16px 24px", width: "40px" }}>
+                    <input 
+                      type="checkbox" 
+                      checked={selectedKeys.length === filteredItems.length && filteredItems.length > 0}
+                      onChange={() => handleSelectAll(filteredItems)}
+                      className="w-4 h-4 accent-[#1b3764] rounded cursor-pointer"
+                    />
+                  </th>
                   <th
                     style={{
                       textAlign: "left",
@@ -795,17 +848,15 @@ const FileList = ({
                       item.name
                     }`}
                   >
-                    {viewType === "trash" && (
-                      <td style={{ padding: "16px 24px" }}>
-                        <input 
-                          type="checkbox" 
-                          checked={selectedKeys.includes(item.key)}
-                          onChange={(e) => toggleSelection(e, item.key)}
-                          onClick={(e) => e.stopPropagation()}
-                          className="w-4 h-4 accent-[#1b3764] rounded cursor-pointer"
-                        />
-                      </td>
-                    )}
+                    <td style={{ padding: "16px 24px" }}>
+                      <input 
+                        type="checkbox" 
+                        checked={selectedKeys.includes(item.key)}
+                        onChange={(e) => toggleSelection(e, item.key)}
+                        onClick={(e) => e.stopPropagation()}
+                        className="w-4 h-4 accent-[#1b3764] rounded cursor-pointer"
+                      />
+                    </td>
                     <td style={{ padding: "16px 24px" }}>
                       <div
                         style={{
@@ -1054,19 +1105,17 @@ const FileList = ({
                     alignItems: "flex-start",
                   }}
                 >
-                  {viewType === "trash" && (
-                    <div 
-                      style={{ position: "absolute", top: "12px", left: "12px", zIndex: 10 }}
-                      onClick={(e) => e.stopPropagation()}
-                    >
-                      <input 
-                        type="checkbox" 
-                        checked={selectedKeys.includes(item.key)}
-                        onChange={(e) => toggleSelection(e, item.key)}
-                        className="w-5 h-5 accent-[#1b3764] rounded-md cursor-pointer shadow-sm"
-                      />
-                    </div>
-                  )}
+                  <div 
+                    style={{ position: "absolute", top: "12px", left: "12px", zIndex: 10 }}
+                    onClick={(e) => e.stopPropagation()}
+                  >
+                    <input 
+                      type="checkbox" 
+                      checked={selectedKeys.includes(item.key)}
+                      onChange={(e) => toggleSelection(e, item.key)}
+                      className="w-5 h-5 accent-[#1b3764] rounded-md cursor-pointer shadow-sm"
+                    />
+                  </div>
                   <div
                     aria-hidden="true"
                     style={{